@@ -0,0 +1,538 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A compiled schema of the arguments of a text {@link Command Command}, parsed once per invocation
+ * into typed values that can be retrieved from the {@link CommandEvent CommandEvent} with its
+ * {@code optX} methods, the same way options are from a {@link SlashCommandEvent SlashCommandEvent}.
+ *
+ * <p>Schemas are declared with the same syntax as a usage string: {@code <name:type>} for a required argument
+ * and {@code [name:type]} for an optional one, which must come after every required one. The type may be left
+ * out for a string, and a trailing {@code ...} on a string makes the last argument take the rest of the arguments
+ * as they are. For example {@code "<target:user> [amount:long] [reason:string...]"}. Without such a rest argument,
+ * arguments past the last one are an error.
+ *
+ * <p>Arguments are separated by whitespace, and may be quoted with {@code "} to contain whitespace, in which
+ * case {@code \"} and {@code \\} are escapes. User, role and channel arguments accept either a mention of the
+ * matching kind or a raw ID, and snowflake arguments any of those.
+ * <br>Parsing doesn't use regular expressions, and only records where each argument is in the arguments String
+ * along with its parsed numeric value, so strings are only copied out once they are retrieved.
+ *
+ * @see Command#argumentSchema
+ */
+public final class ArgumentSchema
+{
+    /**
+     * A schema without any arguments, which is never parsed.
+     */
+    public static final ArgumentSchema EMPTY = new ArgumentSchema("", new String[0], new Type[0], 0, false);
+
+    private static final int MAX_ARGUMENTS = 64;
+
+    private final String spec;
+    private final String[] names;
+    private final Type[] types;
+    private final int requiredCount;
+    private final boolean rest;
+
+    private ArgumentSchema(String spec, String[] names, Type[] types, int requiredCount, boolean rest)
+    {
+        this.spec = spec;
+        this.names = names;
+        this.types = types;
+        this.requiredCount = requiredCount;
+        this.rest = rest;
+    }
+
+    /**
+     * Compiles a schema from its declaration.
+     *
+     * @param  spec
+     *         The declaration, such as {@code "<target:user> [reason:string...]"}, may be {@code null}
+     *
+     * @throws IllegalArgumentException
+     *         If the declaration is malformed
+     *
+     * @return The compiled schema, or {@link #EMPTY} if the declaration is empty
+     */
+    public static ArgumentSchema compile(String spec)
+    {
+        if(spec == null || spec.trim().isEmpty())
+            return EMPTY;
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        int requiredCount = 0;
+        boolean rest = false;
+        int pos = 0, length = spec.length();
+        while(true)
+        {
+            while(pos < length && Character.isWhitespace(spec.charAt(pos)))
+                pos++;
+            if(pos == length)
+                break;
+            if(rest)
+                throw new IllegalArgumentException("Only the last argument may take the rest: " + spec);
+            char open = spec.charAt(pos);
+            if(open != '<' && open != '[')
+                throw new IllegalArgumentException("Expected an argument at index " + pos + ": " + spec);
+            char close = open == '<' ? '>' : ']';
+            int end = spec.indexOf(close, pos);
+            if(end < 0)
+                throw new IllegalArgumentException("Unclosed argument at index " + pos + ": " + spec);
+            String declaration = spec.substring(pos + 1, end).trim();
+            pos = end + 1;
+
+            if(declaration.endsWith("..."))
+            {
+                rest = true;
+                declaration = declaration.substring(0, declaration.length() - 3);
+            }
+            int colon = declaration.indexOf(':');
+            String name = (colon < 0 ? declaration : declaration.substring(0, colon)).trim();
+            Type type = colon < 0 ? Type.STRING : Type.of(declaration.substring(colon + 1).trim());
+            if(name.isEmpty())
+                throw new IllegalArgumentException("Argument without a name: " + spec);
+            if(names.contains(name))
+                throw new IllegalArgumentException("Duplicate argument " + name + ": " + spec);
+            if(rest && type != Type.STRING)
+                throw new IllegalArgumentException("Only a string argument may take the rest: " + spec);
+            if(open == '<')
+            {
+                if(requiredCount != names.size())
+                    throw new IllegalArgumentException("Required argument " + name + " follows an optional one: " + spec);
+                requiredCount++;
+            }
+            names.add(name);
+            types.add(type);
+        }
+        if(names.size() > MAX_ARGUMENTS)
+            throw new IllegalArgumentException("A schema may have at most " + MAX_ARGUMENTS + " arguments: " + spec);
+        return new ArgumentSchema(spec.trim(), names.toArray(new String[0]), types.toArray(new Type[0]), requiredCount, rest);
+    }
+
+    /**
+     * Checks if this schema has no arguments.
+     *
+     * @return {@code true} if this schema has no arguments
+     */
+    public boolean isEmpty()
+    {
+        return names.length == 0;
+    }
+
+    /**
+     * Gets the type of an argument.
+     *
+     * @param  name
+     *         The name of the argument
+     *
+     * @return The type, or {@code null} if there is no argument with that name
+     */
+    public Type getType(String name)
+    {
+        int index = indexOf(name);
+        return index < 0 ? null : types[index];
+    }
+
+    /**
+     * Parses arguments with this schema.
+     *
+     * @param  args
+     *         The arguments of a {@link CommandEvent CommandEvent}
+     *
+     * @return The parsed arguments, which may be {@linkplain Parsed#isValid() invalid}
+     */
+    public Parsed parse(String args)
+    {
+        Parsed parsed = new Parsed(this, args);
+        int pos = 0, length = args.length();
+        for(int i = 0; i < names.length; i++)
+        {
+            pos = skipWhitespace(args, pos);
+            if(pos == length)
+                break;
+            int start, end;
+            if(rest && i == names.length - 1)
+            {
+                // Taken as it is, only trailing whitespace is dropped
+                start = pos;
+                end = length;
+                while(end > start && Character.isWhitespace(args.charAt(end - 1)))
+                    end--;
+                pos = length;
+            }
+            else if(args.charAt(pos) == '"' && (end = closingQuote(args, pos + 1)) >= 0)
+            {
+                start = pos + 1;
+                pos = end + 1;
+                parsed.quoted |= 1L << i;
+            }
+            else
+            {
+                start = pos;
+                while(pos < length && !Character.isWhitespace(args.charAt(pos)))
+                    pos++;
+                end = pos;
+            }
+            parsed.bounds[2 * i] = start;
+            parsed.bounds[2 * i + 1] = end;
+            if(!types[i].parse(args, start, end, parsed.values, i))
+            {
+                parsed.error = "Invalid argument `" + names[i] + "`: expected " + types[i].description + "!";
+                return parsed;
+            }
+            parsed.count = i + 1;
+        }
+        if(parsed.count < requiredCount)
+            parsed.error = "Missing argument `" + names[parsed.count] + "`! Usage: `" + spec + "`";
+        else if((pos = skipWhitespace(args, pos)) < length)
+        {
+            // Only a rest argument takes everything left, anything after the last other one is a mistake
+            int end = pos;
+            while(end < length && !Character.isWhitespace(args.charAt(end)))
+                end++;
+            parsed.error = "Unexpected argument `" + args.substring(pos, end) + "`! Usage: `" + spec + "`";
+        }
+        return parsed;
+    }
+
+    /**
+     * Gets the declaration this schema was compiled from.
+     *
+     * @return The declaration
+     */
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+
+    private int indexOf(String name)
+    {
+        for(int i = 0; i < names.length; i++)
+        {
+            if(names[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String args, int pos)
+    {
+        while(pos < args.length() && Character.isWhitespace(args.charAt(pos)))
+            pos++;
+        return pos;
+    }
+
+    private static int closingQuote(String args, int pos)
+    {
+        for(; pos < args.length(); pos++)
+        {
+            char c = args.charAt(pos);
+            if(c == '\\')
+                pos++;
+            else if(c == '"')
+                return pos;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses an unsigned decimal number without creating a substring, rejecting anything that overflows.
+     *
+     * @return The number, or {@code -1} if the region isn't one
+     */
+    private static long parseUnsigned(String args, int start, int end)
+    {
+        if(start >= end || end - start > 19)
+            return -1;
+        long value = 0;
+        for(int i = start; i < end; i++)
+        {
+            char c = args.charAt(i);
+            if(c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+            if(value < 0)
+                return -1;
+        }
+        return value;
+    }
+
+    /**
+     * Parses a snowflake, either raw or inside a mention starting with one of the provided prefixes.
+     *
+     * @return The snowflake, or {@code -1} if the region isn't one
+     */
+    private static long parseSnowflake(String args, int start, int end, String... mentionPrefixes)
+    {
+        if(end - start > 3 && args.charAt(start) == '<' && args.charAt(end - 1) == '>')
+        {
+            for(String prefix : mentionPrefixes)
+            {
+                if(args.startsWith(prefix, start + 1))
+                    return parseUnsigned(args, start + 1 + prefix.length(), end - 1);
+            }
+            return -1;
+        }
+        return parseUnsigned(args, start, end);
+    }
+
+    /**
+     * The types of arguments.
+     */
+    public enum Type
+    {
+        STRING("string", "text")
+        {
+            @Override
+            boolean parse(String args, int start, int end, long[] values, int index)
+            {
+                return true;
+            }
+        },
+        LONG("long", "a whole number")
+        {
+            @Override
+            boolean parse(String args, int start, int end, long[] values, int index)
+            {
+                boolean negative = start < end && args.charAt(start) == '-';
+                long value = parseUnsigned(args, negative ? start + 1 : start, end);
+                values[index] = negative ? -value : value;
+                return value >= 0;
+            }
+        },
+        DOUBLE("double", "a number")
+        {
+            @Override
+            boolean parse(String args, int start, int end, long[] values, int index)
+            {
+                try
+                {
+                    double value = Double.parseDouble(args.substring(start, end));
+                    values[index] = Double.doubleToRawLongBits(value);
+                    return !Double.isNaN(value) && !Double.isInfinite(value);
+                }
+                catch(NumberFormatException ex)
+                {
+                    return false;
+                }
+            }
+        },
+        BOOLEAN("boolean", "true or false")
+        {
+            @Override
+            boolean parse(String args, int start, int end, long[] values, int index)
+            {
+                int length = end - start;
+                if((length == 4 && args.regionMatches(true, start, "true", 0, 4))
+                    || (length == 3 && args.regionMatches(true, start, "yes", 0, 3))
+                    || (length == 2 && args.regionMatches(true, start, "on", 0, 2)))
+                {
+                    values[index] = 1;
+                    return true;
+                }
+                values[index] = 0;
+                return (length == 5 && args.regionMatches(true, start, "false", 0, 5))
+                    || (length == 2 && args.regionMatches(true, start, "no", 0, 2))
+                    || (length == 3 && args.regionMatches(true, start, "off", 0, 3));
+            }
+        },
+        USER("user", "a user mention or ID")
+        {
+            @Override
+            boolean parse(String args, int start, int end, long[] values, int index)
+            {
+                return (values[index] = parseSnowflake(args, start, end, "@!", "@")) >= 0;
+            }
+        },
+        ROLE("role", "a role mention or ID")
+        {
+            @Override
+            boolean parse(String args, int start, int end, long[] values, int index)
+            {
+                return (values[index] = parseSnowflake(args, start, end, "@&")) >= 0;
+            }
+        },
+        CHANNEL("channel", "a channel mention or ID")
+        {
+            @Override
+            boolean parse(String args, int start, int end, long[] values, int index)
+            {
+                return (values[index] = parseSnowflake(args, start, end, "#")) >= 0;
+            }
+        },
+        SNOWFLAKE("snowflake", "a mention or ID")
+        {
+            @Override
+            boolean parse(String args, int start, int end, long[] values, int index)
+            {
+                return (values[index] = parseSnowflake(args, start, end, "@&", "@!", "@", "#")) >= 0;
+            }
+        };
+
+        private final String name;
+        private final String description;
+
+        Type(String name, String description)
+        {
+            this.name = name;
+            this.description = description;
+        }
+
+        /**
+         * Parses the region of an argument, storing its numeric value if it has one.
+         *
+         * @return {@code false} if the region isn't a valid value of this type
+         */
+        abstract boolean parse(String args, int start, int end, long[] values, int index);
+
+        private static Type of(String name)
+        {
+            String lower = name.toLowerCase(Locale.ROOT);
+            switch(lower)
+            {
+                case "int": case "integer": return LONG;
+                case "number": return DOUBLE;
+                case "bool": return BOOLEAN;
+                case "member": return USER;
+                case "id": return SNOWFLAKE;
+            }
+            for(Type type : values())
+            {
+                if(type.name.equals(lower))
+                    return type;
+            }
+            throw new IllegalArgumentException("Unknown argument type: " + name);
+        }
+    }
+
+    /**
+     * Arguments parsed by an {@link ArgumentSchema ArgumentSchema}.
+     */
+    public static final class Parsed
+    {
+        private final ArgumentSchema schema;
+        private final String args;
+        private final int[] bounds;
+        private final long[] values;
+        private long quoted;
+        private int count;
+        private String error;
+
+        private Parsed(ArgumentSchema schema, String args)
+        {
+            this.schema = schema;
+            this.args = args;
+            this.bounds = new int[schema.names.length * 2];
+            this.values = new long[schema.names.length];
+        }
+
+        /**
+         * Checks if every required argument was provided, and every provided argument was valid.
+         *
+         * @return {@code true} if the arguments are valid
+         */
+        public boolean isValid()
+        {
+            return error == null;
+        }
+
+        /**
+         * Gets why the arguments are invalid.
+         *
+         * @return The error, or {@code null} if the arguments are valid
+         */
+        public String getError()
+        {
+            return error;
+        }
+
+        /**
+         * Checks if an argument was provided.
+         *
+         * @param  name
+         *         The name of the argument
+         *
+         * @return {@code true} if the argument was provided
+         */
+        public boolean has(String name)
+        {
+            int index = schema.indexOf(name);
+            return index >= 0 && index < count;
+        }
+
+        /**
+         * Gets an argument as it was provided, without its quotes.
+         *
+         * @param  name
+         *         The name of the argument
+         *
+         * @return The argument, or {@code null} if it wasn't provided
+         */
+        public String getString(String name)
+        {
+            int index = schema.indexOf(name);
+            if(index < 0 || index >= count)
+                return null;
+            int start = bounds[2 * index], end = bounds[2 * index + 1];
+            int escape = args.indexOf('\\', start);
+            if((quoted & (1L << index)) == 0 || escape < 0 || escape >= end)
+                return args.substring(start, end);
+            StringBuilder builder = new StringBuilder(end - start);
+            for(int i = start; i < end; i++)
+            {
+                char c = args.charAt(i);
+                if(c == '\\' && i + 1 < end)
+                    c = args.charAt(++i);
+                builder.append(c);
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Gets the numeric value of an argument: a whole number, the ID of a user, role, channel or snowflake,
+         * the raw bits of a {@code double}, or {@code 1} and {@code 0} for {@code true} and {@code false}.
+         *
+         * @param  name
+         *         The name of the argument
+         * @param  type
+         *         The type the argument is expected to have
+         * @param  defaultValue
+         *         The value if the argument wasn't provided
+         *
+         * @throws IllegalArgumentException
+         *         If the argument exists but has another type
+         *
+         * @return The value of the argument, or the default value if it wasn't provided
+         */
+        public long getValue(String name, Type type, long defaultValue)
+        {
+            int index = schema.indexOf(name);
+            if(index < 0 || index >= count)
+                return defaultValue;
+            Type actual = schema.types[index];
+            if(actual != type && !(type == Type.SNOWFLAKE && actual.compareTo(Type.USER) >= 0))
+                throw new IllegalArgumentException("Argument " + name + " is a " + actual.name + ", not a " + type.name);
+            return values[index];
+        }
+    }
+}
@@ -15,15 +15,16 @@
  */
 package com.jagrosh.jdautilities.command;
 
+import com.jagrosh.jdautilities.command.impl.CaseInsensitiveIndex;
 import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.Permission;
-import net.dv8tion.jda.api.entities.GuildVoiceState;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
-import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
 
-import java.util.Arrays;
-import java.util.Locale;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiConsumer;
 import java.util.function.Predicate;
@@ -97,6 +98,15 @@ public abstract class Command extends Interaction
      */
     protected String arguments = null;
 
+    /**
+     * The {@link com.jagrosh.jdautilities.command.ArgumentSchema ArgumentSchema} the arguments of the command are
+     * parsed with before it runs, terminating it if they are invalid.
+     * <br>The parsed arguments can be retrieved from the {@link CommandEvent CommandEvent} with its
+     * {@code optX} methods.
+     * <br>Default {@link ArgumentSchema#EMPTY}, leaving the arguments unparsed.
+     */
+    protected ArgumentSchema argumentSchema = ArgumentSchema.EMPTY;
+
     /**
      * {@code true} if the command may only be used in an NSFW
      * {@link TextChannel} or DMs.
@@ -110,6 +120,13 @@ public abstract class Command extends Interaction
      */
     protected String requiredRole = null;
 
+    /**
+     * The IDs of roles required to use this command.
+     * <br>A member with any of these roles, or with a role named {@link #requiredRole requiredRole}, may use the command.
+     * <br>Unlike role names, IDs don't change when a role is renamed.
+     */
+    protected long[] requiredRoleIds = new long[0];
+
     /**
      * The aliases of the command, when calling a command these function identically to calling the
      * {@link com.jagrosh.jdautilities.command.Command#name Command.name}.
@@ -123,6 +140,9 @@ public abstract class Command extends Interaction
      */
     protected Command[] children = new Command[0];
 
+    // Built on first use, as the children are only set by the constructors of subclasses
+    private volatile ChildIndex childIndex;
+
     /**
      * The {@link java.util.function.BiConsumer BiConsumer} for creating a help response to the format
      * {@code [prefix]<command name> help}.
@@ -166,22 +186,28 @@ public abstract class Command extends Interaction
     public final void run(CommandEvent event)
     {
         // child check
-        if(!event.getArgs().isEmpty())
+        String args = event.getArgs();
+        if(!args.isEmpty() && (helpBiConsumer!=null || getChildren().length>0))
         {
-            String[] parts = Arrays.copyOf(event.getArgs().split("\\s+",2), 2);
-            if(helpBiConsumer!=null && parts[0].equalsIgnoreCase(event.getClient().getHelpWord()))
+            // The first word and whatever follows the whitespace after it
+            int wordEnd = 0;
+            while(wordEnd < args.length() && !isSpace(args.charAt(wordEnd)))
+                wordEnd++;
+            String helpWord = event.getClient().getHelpWord();
+            if(helpBiConsumer!=null && wordEnd == helpWord.length() && args.regionMatches(true, 0, helpWord, 0, wordEnd))
             {
                 helpBiConsumer.accept(event, this);
                 return;
             }
-            for(Command cmd: getChildren())
+            Command cmd = getChildIndex().get(args, 0, wordEnd);
+            if(cmd != null)
             {
-                if(cmd.isCommandFor(parts[0]))
-                {
-                    event.setArgs(parts[1]==null ? "" : parts[1]);
-                    cmd.run(event);
-                    return;
-                }
+                int restStart = wordEnd;
+                while(restStart < args.length() && isSpace(args.charAt(restStart)))
+                    restStart++;
+                event.setArgs(args.substring(restStart));
+                cmd.run(event);
+                return;
             }
         }
 
@@ -200,81 +226,29 @@ public abstract class Command extends Interaction
         }
 
         // is allowed check
-        if(event.isFromType(ChannelType.TEXT) && !isAllowed(event.getTextChannel()))
+        if(usesTopicTags && event.isFromType(ChannelType.TEXT) && !isAllowed(event.getClient().getTopicTags(event.getTextChannel())))
         {
             terminate(event, "That command cannot be used in this channel!");
             return;
         }
 
         // required role check
-        if(requiredRole!=null)
-            if(!event.isFromType(ChannelType.TEXT) || event.getMember().getRoles().stream().noneMatch(r -> r.getName().equalsIgnoreCase(requiredRole)))
+        if(requiredRole!=null || requiredRoleIds.length>0)
+            if(!event.isFromType(ChannelType.TEXT) || !hasRequiredRole(event.getClient(), event.getMember(), requiredRole))
             {
-                terminate(event, event.getClient().getError()+" You must have a role called `"+requiredRole+"` to use that!");
+                terminate(event, getRequiredRoleError(event.getClient(), event.getGuild(), requiredRole));
                 return;
             }
 
         // availability check
         if(!event.isFromType(ChannelType.PRIVATE))
         {
-            //user perms
-            for(Permission p: userPermissions)
+            String permissionError = checkPermissions(event.getClient(), event.getMember(), event.getGuildChannel(),
+                true, false);
+            if(permissionError!=null)
             {
-                if(p.isChannel())
-                {
-                    if(!event.getMember().hasPermission(event.getGuildChannel(), p))
-                    {
-                        terminate(event, String.format(userMissingPermMessage, event.getClient().getError(), p.getName(), "channel"));
-                        return;
-                    }
-                }
-                else
-                {
-                    if(!event.getMember().hasPermission(p))
-                    {
-                        terminate(event, String.format(userMissingPermMessage, event.getClient().getError(), p.getName(), "server"));
-                        return;
-                    }
-                }
-            }
-
-            // bot perms
-            for(Permission p: botPermissions)
-            {
-                if(p.isChannel())
-                {
-                    if((p.name().startsWith("VOICE")))
-                    {
-                        GuildVoiceState gvc = event.getMember().getVoiceState();
-                        AudioChannel vc = gvc == null ? null : gvc.getChannel();
-                        if(vc==null)
-                        {
-                            terminate(event, event.getClient().getError()+" You must be in a voice channel to use that!");
-                            return;
-                        }
-                        else if(!event.getSelfMember().hasPermission(vc, p))
-                        {
-                            terminate(event, String.format(botMissingPermMessage, event.getClient().getError(), p.getName(), "voice channel"));
-                            return;
-                        }
-                    }
-                    else
-                    {
-                        if(!event.getSelfMember().hasPermission(event.getGuildChannel(), p))
-                        {
-                            terminate(event, String.format(botMissingPermMessage, event.getClient().getError(), p.getName(), "channel"));
-                            return;
-                        }
-                    }
-                }
-                else
-                {
-                    if(!event.getSelfMember().hasPermission(p))
-                    {
-                        terminate(event, String.format(botMissingPermMessage, event.getClient().getError(), p.getName(), "server"));
-                        return;
-                    }
-                }
+                terminate(event, permissionError);
+                return;
             }
 
             // nsfw check
@@ -290,23 +264,49 @@ public abstract class Command extends Interaction
             return;
         }
 
+        // argument check
+        if(!argumentSchema.isEmpty())
+        {
+            ArgumentSchema.Parsed parsed = argumentSchema.parse(event.getArgs());
+            if(!parsed.isValid())
+            {
+                terminate(event, event.getClient().getError()+" "+parsed.getError());
+                return;
+            }
+            event.setParsedArguments(parsed);
+        }
+
+        // rate limit check, ignoring owner
+        if(rateLimits.length>0 && !(event.isOwner()))
+        {
+            String error = acquireRateLimits(event.getClient(), name, event.getAuthor().getIdLong(), event.getGuild(), event.getChannel().getIdLong(), event.getJDA());
+            if(error!=null)
+            {
+                terminate(event, error);
+                return;
+            }
+        }
+
         // cooldown check, ignoring owner
         if(cooldown>0 && !(event.isOwner()))
         {
-            String key = getCooldownKey(event);
-            int remaining = event.getClient().getRemainingCooldown(key);
+            CooldownKey key = getCooldownKey(name, event.getAuthor().getIdLong(), event.getGuild(), event.getChannel().getIdLong(), event.getJDA());
+            int remaining = event.getClient().acquireCooldown(key, cooldown);
             if(remaining>0)
             {
+                // The command won't run, so the uses taken from the rate limits don't count
+                refundRateLimits(name, event.getAuthor().getIdLong(), event.getGuild(), event.getChannel().getIdLong(), event.getJDA());
                 terminate(event, getCooldownError(event, remaining));
                 return;
             }
-            else event.getClient().applyCooldown(key, cooldown);
         }
 
         // run
+        long start = System.nanoTime();
         try {
             execute(event);
         } catch(Throwable t) {
+            event.getClient().getCommandMetrics().recordException(this, System.nanoTime() - start);
             if(event.getClient().getListener() != null)
             {
                 event.getClient().getListener().onCommandException(event, this, t);
@@ -315,6 +315,7 @@ public abstract class Command extends Interaction
             // otherwise we rethrow
             throw t;
         }
+        event.getClient().getCommandMetrics().recordSuccess(this, System.nanoTime() - start);
 
         if(event.getClient().getListener() != null)
             event.getClient().getListener().onCompletedCommand(event, this);
@@ -338,6 +339,60 @@ public abstract class Command extends Interaction
         return false;
     }
 
+    /**
+     * Checks if the provided Member has a role with the required name, or one of the
+     * {@link #requiredRoleIds requiredRoleIds}.
+     * <br>The required role name is resolved to role IDs through the {@link CommandClient#getRoleIds(Guild, String) cache}
+     * of the client, so this only compares IDs.
+     *
+     * @param  client
+     *         The CommandClient running the command
+     * @param  member
+     *         The Member to check
+     * @param  requiredRole
+     *         The name of the required role, may be {@code null}. This is passed in, as SlashCommand declares its own.
+     *
+     * @return {@code true} if the Member has a required role
+     */
+    boolean hasRequiredRole(CommandClient client, Member member, String requiredRole)
+    {
+        long[] named = requiredRole==null ? null : client.getRoleIds(member.getGuild(), requiredRole);
+        for(Role role : member.getUnsortedRoles())
+        {
+            long id = role.getIdLong();
+            if(contains(requiredRoleIds, id) || (named!=null && contains(named, id)))
+                return true;
+        }
+        return false;
+    }
+
+    String getRequiredRoleError(CommandClient client, Guild guild, String requiredRole)
+    {
+        if(requiredRole!=null)
+            return client.getError()+" You must have a role called `"+requiredRole+"` to use that!";
+        StringBuilder names = new StringBuilder();
+        for(long id : requiredRoleIds)
+        {
+            Role role = guild==null ? null : guild.getRoleById(id);
+            if(role!=null)
+                names.append(names.length()==0 ? "" : ", ").append('`').append(role.getName()).append('`');
+        }
+        if(names.length()==0)
+            return client.getError()+" You must have a required role to use that!";
+        return client.getError()+" You must have one of these roles to use that: "+names;
+    }
+
+    private static boolean contains(long[] ids, long id)
+    {
+        // Commands rarely require more than a couple of roles, a linear scan beats anything fancier
+        for(long l : ids)
+        {
+            if(l==id)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Checks whether a command is allowed in a {@link TextChannel}
      * by searching the channel topic for topic tags relating to the command.
@@ -363,24 +418,25 @@ public abstract class Command extends Interaction
             return true;
         if(channel==null)
             return true;
-        String topic = channel.getTopic();
-        if(topic==null || topic.isEmpty())
-            return true;
-        topic = topic.toLowerCase(Locale.ROOT);
-        String lowerName = name.toLowerCase(Locale.ROOT);
-        if(topic.contains("{"+lowerName+"}"))
+        return isAllowed(TopicTags.parse(channel.getTopic()));
+    }
+
+    /**
+     * Checks whether a command is allowed by the already parsed {@link TopicTags TopicTags} of a channel.
+     * <br>This works the same as {@link #isAllowed(TextChannel)}, without parsing the topic again.
+     *
+     * @param  tags
+     *         The TopicTags of the channel, such as those cached by
+     *         {@link CommandClient#getTopicTags(TextChannel)}.
+     *
+     * @return {@code true} if the tags don't specify anything that would cause this command
+     *         to be cancelled, or if {@code usesTopicTags} has been set to {@code false}.
+     */
+    public boolean isAllowed(TopicTags tags)
+    {
+        if(!usesTopicTags || tags==null)
             return true;
-        if(topic.contains("{-"+lowerName+"}"))
-            return false;
-        String lowerCat = category==null ? null : category.getName().toLowerCase(Locale.ROOT);
-        if(lowerCat!=null)
-        {
-            if(topic.contains("{"+lowerCat+"}"))
-                return true;
-            if(topic.contains("{-"+lowerCat+"}"))
-                return false;
-        }
-        return !topic.contains("{-all}");
+        return tags.isAllowed(name, category==null ? null : category.getName());
     }
 
     /**
@@ -420,9 +476,21 @@ public abstract class Command extends Interaction
      */
     public String getArguments()
     {
+        if(arguments == null && !argumentSchema.isEmpty())
+            return argumentSchema.toString();
         return arguments;
     }
 
+    /**
+     * Gets the {@link com.jagrosh.jdautilities.command.Command#argumentSchema Command.argumentSchema} for the Command.
+     *
+     * @return The ArgumentSchema for the Command
+     */
+    public ArgumentSchema getArgumentSchema()
+    {
+        return argumentSchema;
+    }
+
     /**
      * Checks if this Command can only be used in a {@link net.dv8tion.jda.api.entities.Guild Guild}.
      *
@@ -444,6 +512,16 @@ public abstract class Command extends Interaction
         return requiredRole;
     }
 
+    /**
+     * Gets the {@link com.jagrosh.jdautilities.command.Command#requiredRoleIds Command.requiredRoleIds} for the Command.
+     *
+     * @return The requiredRoleIds for the Command
+     */
+    public long[] getRequiredRoleIds()
+    {
+        return requiredRoleIds;
+    }
+
     /**
      * Gets the {@link com.jagrosh.jdautilities.command.Command#aliases Command.aliases} for the Command.
      *
@@ -474,8 +552,48 @@ public abstract class Command extends Interaction
         return hidden;
     }
 
+    /**
+     * Gets the index of the children of this command by their names and aliases, building it if the
+     * children were changed since it was last built.
+     * <br>When several children share a name or alias, the first of them is indexed under it.
+     *
+     * @return The index of the children
+     */
+    CaseInsensitiveIndex<Command> getChildIndex()
+    {
+        Command[] children = getChildren();
+        ChildIndex cached = childIndex;
+        if(cached == null || cached.children != children)
+        {
+            // Keys that fold together resolve to the last one put, so children are put in
+            // reverse, moving each key to the end, so the first child matching a word wins
+            Map<String, Command> index = new LinkedHashMap<>();
+            for(int i = children.length - 1; i >= 0; i--)
+            {
+                Command child = children[i];
+                index.remove(child.getName());
+                index.put(child.getName(), child);
+                for(String alias : child.getAliases())
+                {
+                    index.remove(alias);
+                    index.put(alias, child);
+                }
+            }
+            cached = new ChildIndex(children, CaseInsensitiveIndex.of(index));
+            childIndex = cached;
+        }
+        return cached.index;
+    }
+
+    private static boolean isSpace(char c)
+    {
+        // The whitespace of the \s regular expression this replaces
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     private void terminate(CommandEvent event, String message)
     {
+        event.getClient().getCommandMetrics().recordTermination(this);
         if(message!=null)
             event.reply(message);
         if(event.getClient().getListener()!=null)
@@ -486,6 +604,10 @@ public abstract class Command extends Interaction
      * Gets the proper cooldown key for this Command under the provided
      * {@link com.jagrosh.jdautilities.command.CommandEvent CommandEvent}.
      *
+     * <p>This key is used by the String based cooldown methods of the {@link CommandClient CommandClient}, such as
+     * {@link CommandClient#getRemainingCooldown(String)}, and refers to the same cooldown as the
+     * {@link CooldownKey CooldownKey} used when running.
+     *
      * @param  event
      *         The CommandEvent to generate the cooldown for.
      *
@@ -661,4 +783,16 @@ public abstract class Command extends Interaction
             return hash;
         }
     }
+
+    private static final class ChildIndex
+    {
+        private final Command[] children;
+        private final CaseInsensitiveIndex<Command> index;
+
+        private ChildIndex(Command[] children, CaseInsensitiveIndex<Command> index)
+        {
+            this.children = children;
+            this.index = index;
+        }
+    }
 }
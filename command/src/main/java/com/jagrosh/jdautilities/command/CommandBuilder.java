@@ -45,8 +45,10 @@ public class CommandBuilder
     private String help = "no help available";
     private Category category = null;
     private String arguments = null;
+    private ArgumentSchema argumentSchema = ArgumentSchema.EMPTY;
     private boolean guildOnly = true;
     private String requiredRole = null;
+    private long[] requiredRoleIds = new long[0];
     private boolean ownerCommand = false;
     private int cooldown = 0;
     private Permission[] userPermissions = new Permission[0];
@@ -57,6 +59,8 @@ public class CommandBuilder
     private boolean usesTopicTags = true;
     private CooldownScope cooldownScope = CooldownScope.USER;
     private boolean hidden = false;
+    private String executionGroup = null;
+    private RateLimit[] rateLimits = new RateLimit[0];
 
     /**
      * Sets the {@link com.jagrosh.jdautilities.command.Command#name name}
@@ -124,6 +128,40 @@ public class CommandBuilder
         return this;
     }
 
+    /**
+     * Sets the {@link com.jagrosh.jdautilities.command.Command#argumentSchema argument schema}
+     * of the Command built from this CommandBuilder.
+     *
+     * @param  argumentSchema
+     *         The argument schema of the Command to be built, or {@code null} to leave arguments unparsed.
+     *
+     * @return This CommandBuilder
+     */
+    public CommandBuilder setArgumentSchema(ArgumentSchema argumentSchema)
+    {
+        this.argumentSchema = argumentSchema == null ? ArgumentSchema.EMPTY : argumentSchema;
+        return this;
+    }
+
+    /**
+     * Compiles and sets the {@link com.jagrosh.jdautilities.command.Command#argumentSchema argument schema}
+     * of the Command built from this CommandBuilder.
+     *
+     * @param  argumentSchema
+     *         The declaration of the argument schema, such as {@code "<target:user> [reason:string...]"}
+     *
+     * @throws IllegalArgumentException
+     *         If the declaration is malformed
+     *
+     * @return This CommandBuilder
+     *
+     * @see    ArgumentSchema#compile(String)
+     */
+    public CommandBuilder setArgumentSchema(String argumentSchema)
+    {
+        return setArgumentSchema(ArgumentSchema.compile(argumentSchema));
+    }
+
     /**
      * Sets the Command built to be {@link com.jagrosh.jdautilities.command.Command#guildOnly
      * guild only}.
@@ -154,6 +192,22 @@ public class CommandBuilder
         return this;
     }
 
+    /**
+     * Sets the IDs of {@link com.jagrosh.jdautilities.command.Command#requiredRoleIds
+     * required roles} to use the Command built from this CommandBuilder.
+     * <br>A member with any of these roles may use the Command.
+     *
+     * @param  requiredRoleIds
+     *         The IDs of roles required to use the Command to be built.
+     *
+     * @return This CommandBuilder
+     */
+    public CommandBuilder setRequiredRoleIds(long... requiredRoleIds)
+    {
+        this.requiredRoleIds = requiredRoleIds == null ? new long[0] : requiredRoleIds;
+        return this;
+    }
+
     /**
      * Sets the Command built to be {@link com.jagrosh.jdautilities.command.Command#ownerCommand
      * owner only}.
@@ -451,6 +505,36 @@ public class CommandBuilder
         return this;
     }
 
+    /**
+     * Sets the {@link com.jagrosh.jdautilities.command.Command#executionGroup execution group}
+     * of the Command built from this CommandBuilder.
+     *
+     * @param  executionGroup
+     *         The name of the execution group, or {@code null} to use the default execution strategy.
+     *
+     * @return This CommandBuilder
+     */
+    public CommandBuilder setExecutionGroup(String executionGroup)
+    {
+        this.executionGroup = executionGroup;
+        return this;
+    }
+
+    /**
+     * Sets the {@link com.jagrosh.jdautilities.command.Command#rateLimits rate limits}
+     * of the Command built from this CommandBuilder.
+     *
+     * @param  rateLimits
+     *         The RateLimits of the Command to be built.
+     *
+     * @return This CommandBuilder
+     */
+    public CommandBuilder setRateLimits(RateLimit... rateLimits)
+    {
+        this.rateLimits = rateLimits == null ? new RateLimit[0] : rateLimits.clone();
+        return this;
+    }
+
     /**
      * Builds the {@link com.jagrosh.jdautilities.command.Command Command}
      * using the previously provided information.
@@ -489,11 +573,11 @@ public class CommandBuilder
      */
     public Command build(BiConsumer<Command,CommandEvent> execution)
     {
-        return new BlankCommand(name, help, category, arguments,
-                guildOnly, requiredRole, ownerCommand, cooldown,
+        return new BlankCommand(name, help, category, arguments, argumentSchema,
+                guildOnly, requiredRole, requiredRoleIds, ownerCommand, cooldown,
                 userPermissions, botPermissions, aliases.toArray(new String[0]),
                 children.toArray(new Command[0]), helpBiConsumer, usesTopicTags,
-                cooldownScope, hidden)
+                cooldownScope, hidden, executionGroup, rateLimits.clone())
         {
             @Override
             protected void execute(CommandEvent event)
@@ -506,18 +590,21 @@ public class CommandBuilder
     private abstract static class BlankCommand extends Command
     {
         BlankCommand(String name, String help, Category category,
-                     String arguments, boolean guildOnly, String requiredRole,
-                     boolean ownerCommand, int cooldown, Permission[] userPermissions,
+                     String arguments, ArgumentSchema argumentSchema, boolean guildOnly, String requiredRole,
+                     long[] requiredRoleIds, boolean ownerCommand, int cooldown, Permission[] userPermissions,
                      Permission[] botPermissions, String[] aliases, Command[] children,
                      BiConsumer<CommandEvent, Command> helpBiConsumer,
-                     boolean usesTopicTags, CooldownScope cooldownScope, boolean hidden)
+                     boolean usesTopicTags, CooldownScope cooldownScope, boolean hidden,
+                     String executionGroup, RateLimit[] rateLimits)
         {
             this.name = name;
             this.help = help;
             this.category = category;
             this.arguments = arguments;
+            this.argumentSchema = argumentSchema;
             this.guildOnly = guildOnly;
             this.requiredRole = requiredRole;
+            this.requiredRoleIds = requiredRoleIds;
             this.ownerCommand = ownerCommand;
             this.cooldown = cooldown;
             this.userPermissions = userPermissions;
@@ -528,6 +615,10 @@ public class CommandBuilder
             this.usesTopicTags = usesTopicTags;
             this.cooldownScope = cooldownScope;
             this.hidden = hidden;
+            this.executionGroup = executionGroup;
+            this.rateLimits = rateLimits;
+            // The children are known up front, so index them now rather than on the first dispatch
+            getChildIndex();
         }
     }
 }
@@ -17,6 +17,8 @@ package com.jagrosh.jdautilities.command;
 
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 
@@ -412,8 +414,30 @@ public interface CommandClient
      */
     void applyCooldown(String name, int seconds);
 
+    /**
+     * Atomically checks the specified cooldown and, if it has expired, applies it again.
+     * <br>Two simultaneous calls for the same key can never both acquire the cooldown.
+     *
+     * @param  key
+     *         The cooldown key
+     * @param  seconds
+     *         The time to make the cooldown last if it is acquired
+     *
+     * @return {@code 0} if the cooldown was acquired, otherwise the number of seconds remaining on it
+     */
+    int acquireCooldown(CooldownKey key, int seconds);
+
+    /**
+     * Gets the {@link com.jagrosh.jdautilities.command.CooldownStore CooldownStore} holding the cooldowns
+     * of this client.
+     *
+     * @return The CooldownStore of this client
+     */
+    CooldownStore getCooldownStore();
+
     /**
      * Cleans up expired cooldowns to reduce memory.
+     * <br>Expired cooldowns are also cleaned up automatically, so calling this is never required.
      */
     void cleanCooldowns();
 
@@ -445,6 +469,14 @@ public interface CommandClient
      */
     int getCommandUses(String name);
 
+    /**
+     * Gets the {@link com.jagrosh.jdautilities.command.CommandMetrics CommandMetrics} of this client,
+     * holding the uses, successes, terminations, exceptions and latencies of every command and context menu.
+     *
+     * @return The CommandMetrics of this client
+     */
+    CommandMetrics getCommandMetrics();
+
     /**
      * Gets the ID of the owner of this bot as a String.
      *
@@ -473,6 +505,77 @@ public interface CommandClient
      */
     long[] getCoOwnerIdsLong();
 
+    /**
+     * Checks if the provided User ID is the {@linkplain #getOwnerId() Owner} or one of the
+     * {@linkplain #getCoOwnerIds() CoOwners} of this bot.
+     *
+     * @param  userId
+     *         The ID of the User to check
+     *
+     * @return {@code true} if the User is an Owner or CoOwner of this bot
+     */
+    boolean isOwner(long userId);
+
+    /**
+     * Gets the raw effective permissions of the bot in the provided channel, including permission overrides.
+     * <br>For threads, these are the permissions in their parent channel.
+     *
+     * <p>Permissions are cached per channel, and the cache is invalidated whenever JDA reports a change that may
+     * affect them, such as role or permission override updates, so repeated checks in the same channel don't
+     * recompute them.
+     *
+     * @param  channel
+     *         The channel
+     *
+     * @return The raw effective permissions of the bot in the channel
+     *
+     * @see    net.dv8tion.jda.api.Permission#getPermissions(long)
+     */
+    long getSelfPermissions(GuildChannel channel);
+
+    /**
+     * Gets the raw effective server level permissions of the bot in the provided Guild.
+     * <br>If the bot is an administrator, every bit is set.
+     *
+     * <p>Like {@link #getSelfPermissions(GuildChannel)}, these are cached until JDA reports a change that
+     * may affect them.
+     *
+     * @param  guild
+     *         The Guild
+     *
+     * @return The raw effective permissions of the bot in the Guild
+     */
+    long getSelfPermissions(Guild guild);
+
+    /**
+     * Gets the parsed {@link TopicTags TopicTags} of the provided TextChannel's topic.
+     *
+     * <p>Tags are cached per channel and only parsed again once the topic changes, so checking them
+     * with {@link Command#isAllowed(TopicTags)} doesn't search the topic on every use.
+     *
+     * @param  channel
+     *         The TextChannel
+     *
+     * @return The TopicTags of the channel
+     */
+    TopicTags getTopicTags(TextChannel channel);
+
+    /**
+     * Gets the IDs of every {@link net.dv8tion.jda.api.entities.Role Role} in the provided Guild with the
+     * provided name, ignoring case.
+     *
+     * <p>Results are cached per Guild, and the cache is invalidated whenever a role of the Guild is
+     * created, renamed or deleted, so repeated lookups don't compare the names of every role.
+     *
+     * @param  guild
+     *         The Guild
+     * @param  name
+     *         The name of the roles
+     *
+     * @return The IDs of the roles with the name, possibly empty
+     */
+    long[] getRoleIds(Guild guild, String name);
+
     /**
      * Gets the success emoji.
      *
@@ -504,6 +607,49 @@ public interface CommandClient
      */
     ScheduledExecutorService getScheduleExecutor();
 
+    /**
+     * Gets the default {@link com.jagrosh.jdautilities.command.CommandExecutionStrategy CommandExecutionStrategy}
+     * used to run commands that are not part of an execution group.
+     *
+     * @return The default CommandExecutionStrategy
+     */
+    CommandExecutionStrategy getExecutionStrategy();
+
+    /**
+     * Gets the {@link com.jagrosh.jdautilities.command.CommandExecutionStrategy CommandExecutionStrategy}
+     * registered for an execution group.
+     * <br>This is useful for monitoring the {@link CommandExecutionStrategy#getQueueDepth() queue depth}
+     * and {@link CommandExecutionStrategy#getRejectedCount() rejections} of a group.
+     *
+     * @param  group
+     *         The name of the execution group
+     *
+     * @return The CommandExecutionStrategy of the group, or the default one if no group
+     *         is registered under the name
+     */
+    CommandExecutionStrategy getExecutionStrategy(String group);
+
+    /**
+     * Gets the number of commands queued or running on the execution lane of a guild, or of a channel
+     * for commands used outside of guilds.
+     * <br>Lanes are shared by every guild hashing onto them, so a deep lane points to a busy guild.
+     *
+     * @param  id
+     *         The ID of the guild, or of the channel for commands used outside of guilds
+     *
+     * @return The depth of the lane, or {@code 0} if {@link CommandClientBuilder#setExecutionLanes(int)
+     *         execution lanes} are not enabled
+     */
+    int getLaneDepth(long id);
+
+    /**
+     * Gets the number of commands queued or running on each execution lane.
+     *
+     * @return The depths of every lane, empty if {@link CommandClientBuilder#setExecutionLanes(int)
+     *         execution lanes} are not enabled
+     */
+    int[] getLaneDepths();
+
     /**
      * Gets the invite to the bot's support server.
      *
@@ -515,22 +661,11 @@ public interface CommandClient
      * Gets an a recently updated count of all the {@link net.dv8tion.jda.api.entities.Guild Guild}s
      * the bot is connected to on all shards.
      *
-     * <p><b>NOTE:</b> This may not always or should not be assumed accurate! Any time
-     * a shard joins or leaves a guild it will update the number retrieved by this method
-     * but will not update when other shards join or leave guilds. This means that shards
-     * will not always retrieve the same value. For instance:
-     * <ul>
-     *     <li>1) Shard A joins 10 Guilds</li>
-     *     <li>2) Shard B invokes this method</li>
-     *     <li>3) Shard A invokes this method</li>
-     * </ul>
-     * The number retrieved by Shard B will be that of the number retrieved by Shard A,
-     * minus 10 guilds because Shard B hasn't updated and accounted for those 10 guilds
-     * on Shard A.
-     *
-     * <p><b>This feature requires a Discord Bots API Key to be set!</b>
-     * <br>To set your Discord Bots API Key, you'll have to retrieve it from the
-     * <a href="http://bots.discord.pw/">Discord Bots</a> website.
+     * <p><b>NOTE:</b> This may not always or should not be assumed accurate! The count is only updated
+     * when the stats of the bot are reported, which happens at most once per
+     * {@linkplain CommandClientBuilder#setStatsReportWindow(long, java.util.concurrent.TimeUnit) window} after
+     * a shard joins or leaves a guild. Shards of the same {@link net.dv8tion.jda.api.sharding.ShardManager ShardManager}
+     * are added together, so every shard retrieves the same value.
      *
      * @return A recently updated count of all the Guilds the bot is connected to on
      *         all shards.
@@ -603,7 +738,8 @@ public interface CommandClient
     /**
      * Upserts all interactions to the provided {@link #forcedGuildId() forced server}.
      * <br>This runs after the {@link net.dv8tion.jda.api.events.session.ReadyEvent ReadyEvent} has been fired
-     * if {@link #isManualUpsert()} is {@code false}.
+     * if {@link #isManualUpsert()} is {@code false}, in which case interactions are only upserted
+     * if they changed since the last upsert. Calling this directly always upserts them.
      * <br>If {@link #forcedGuildId()} is {@code null}, commands will upsert globally.
      * <b>This may take up to an hour.</b>
      *
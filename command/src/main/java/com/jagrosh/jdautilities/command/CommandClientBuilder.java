@@ -15,15 +15,19 @@
  */
 package com.jagrosh.jdautilities.command;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
 import com.jagrosh.jdautilities.command.impl.AnnotatedModuleCompilerImpl;
 import com.jagrosh.jdautilities.command.impl.CommandClientImpl;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import net.dv8tion.jda.annotations.DeprecatedSince;
@@ -72,6 +76,14 @@ public class CommandClientBuilder
     private int linkedCacheSize = 0;
     private AnnotatedModuleCompiler compiler = new AnnotatedModuleCompilerImpl();
     private GuildSettingsManager<?> manager = null;
+    private CommandExecutionStrategy executionStrategy = CommandExecutionStrategy.inline();
+    private final Map<String, CommandExecutionStrategy> executionGroups = new HashMap<>();
+    private int executionLanes = 0;
+    private CooldownStore cooldownStore = null;
+    private final List<StatsDestination> statsDestinations = new ArrayList<>();
+    private long statsReportWindow = TimeUnit.SECONDS.toMillis(10);
+    private Path interactionSnapshot = null;
+    private boolean targetedInteractionUpdates = false;
 
     /**
      * Builds a {@link com.jagrosh.jdautilities.command.impl.CommandClientImpl CommandClientImpl}
@@ -85,7 +97,10 @@ public class CommandClientBuilder
     {
         CommandClient client = new CommandClientImpl(ownerId, coOwnerIds, prefix, altprefix, prefixes, prefixFunction, commandPreProcessFunction, commandPreProcessBiFunction, activity, status, serverInvite,
                                                      success, warning, error, carbonKey, botsKey, new ArrayList<>(commands), new ArrayList<>(slashCommands), new ArrayList<>(contextMenus), forcedGuildId, manualUpsert, useHelp,
-                                                     shutdownAutomatically, helpConsumer, helpWord, executor, linkedCacheSize, compiler, manager);
+                                                     shutdownAutomatically, helpConsumer, helpWord, executor, linkedCacheSize, compiler, manager,
+                                                     executionStrategy, new HashMap<>(executionGroups), executionLanes, cooldownStore,
+                                                     new ArrayList<>(statsDestinations), statsReportWindow,
+                                                     interactionSnapshot, targetedInteractionUpdates);
         if(listener!=null)
             client.setListener(listener);
         return client;
@@ -512,6 +527,45 @@ public class CommandClientBuilder
         return this;
     }
 
+    /**
+     * Sets a file to keep a snapshot of the last upserted interactions in.
+     *
+     * <p>Interactions are only upserted after a {@link net.dv8tion.jda.api.events.session.ReadyEvent ReadyEvent}
+     * if their data changed since the last upsert, and only once for every shard of the bot. With a snapshot
+     * file, this also holds across restarts, so a restart with unchanged interactions upserts nothing at all.
+     * <br>Without one, the first shard to be ready after every start upserts them.
+     * <br>Explicit calls to {@link CommandClient#upsertInteractions(net.dv8tion.jda.api.JDA)} always upsert.
+     *
+     * @param  interactionSnapshot
+     *         The snapshot file, or {@code null} to only keep the snapshot in memory
+     *
+     * @return This builder
+     */
+    public CommandClientBuilder setInteractionSnapshot(Path interactionSnapshot)
+    {
+        this.interactionSnapshot = interactionSnapshot;
+        return this;
+    }
+
+    /**
+     * Whether or not to only upsert the interactions that changed since the last upsert, instead of
+     * overwriting every interaction at once.
+     * <br>If an interaction was removed, or there is no previous snapshot, every interaction is still overwritten.
+     * False by default.
+     *
+     * @param  targetedInteractionUpdates
+     *         {@code true} to only upsert changed interactions
+     *
+     * @return This builder
+     *
+     * @see    #setInteractionSnapshot(Path)
+     */
+    public CommandClientBuilder setTargetedInteractionUpdates(boolean targetedInteractionUpdates)
+    {
+        this.targetedInteractionUpdates = targetedInteractionUpdates;
+        return this;
+    }
+
     /**
      * Adds an annotated command module to the
      * {@link com.jagrosh.jdautilities.command.impl.CommandClientImpl CommandClientImpl} for this session.
@@ -614,6 +668,43 @@ public class CommandClientBuilder
         return this;
     }
 
+    /**
+     * Adds a {@link com.jagrosh.jdautilities.command.StatsDestination StatsDestination} the guild count of
+     * the bot is reported to, in addition to any set by {@link #setCarbonitexKey(String)} and
+     * {@link #setDiscordBotsKey(String)}.
+     *
+     * <p>Reports are made at most once per {@linkplain #setStatsReportWindow(long, TimeUnit) window}, with the
+     * guild count of every shard added together.
+     *
+     * @param  destination
+     *         The StatsDestination to add
+     *
+     * @return This builder
+     */
+    public CommandClientBuilder addStatsDestination(StatsDestination destination)
+    {
+        statsDestinations.add(destination);
+        return this;
+    }
+
+    /**
+     * Sets how long guild joins, leaves and shard starts are coalesced for before the guild count of the bot
+     * is reported to its {@link com.jagrosh.jdautilities.command.StatsDestination StatsDestination}s.
+     * <br>Default 10 seconds.
+     *
+     * @param  window
+     *         The length of the window
+     * @param  unit
+     *         The unit of the window
+     *
+     * @return This builder
+     */
+    public CommandClientBuilder setStatsReportWindow(long window, TimeUnit unit)
+    {
+        this.statsReportWindow = Math.max(0, unit.toMillis(window));
+        return this;
+    }
+
     /**
      * This method has been deprecated as the new(ish) ratelimit system is more complex than we'd like to
      * implement in JDA-Utils. Considering using some other library which correctly handles the ratelimits
@@ -646,6 +737,78 @@ public class CommandClientBuilder
         return this;
     }
 
+    /**
+     * Sets the default {@link com.jagrosh.jdautilities.command.CommandExecutionStrategy CommandExecutionStrategy}
+     * used to run Commands, SlashCommands and ContextMenus.
+     * <br>Default {@link CommandExecutionStrategy#inline()}, running them on the JDA event thread.
+     *
+     * @param  executionStrategy
+     *         The default execution strategy, or {@code null} to run inline
+     *
+     * @return This builder
+     */
+    public CommandClientBuilder setExecutionStrategy(CommandExecutionStrategy executionStrategy)
+    {
+        this.executionStrategy = executionStrategy == null ? CommandExecutionStrategy.inline() : executionStrategy;
+        return this;
+    }
+
+    /**
+     * Registers a {@link com.jagrosh.jdautilities.command.CommandExecutionStrategy CommandExecutionStrategy}
+     * under a name.
+     * <br>Commands, SlashCommands and ContextMenus with a matching {@link Interaction#executionGroup executionGroup}
+     * are run with this strategy instead of the default one.
+     *
+     * @param  name
+     *         The name of the execution group
+     * @param  executionStrategy
+     *         The execution strategy of the group
+     *
+     * @return This builder
+     */
+    public CommandClientBuilder addExecutionGroup(String name, CommandExecutionStrategy executionStrategy)
+    {
+        this.executionGroups.put(name, executionStrategy);
+        return this;
+    }
+
+    /**
+     * Sets the number of ordered execution lanes.
+     *
+     * <p>When enabled, each command is hashed onto a lane by the ID of its guild, or of its channel outside of
+     * guilds. Commands on the same lane run one after another in the order they were received, while different
+     * lanes run in parallel on their {@link #setExecutionStrategy(CommandExecutionStrategy) execution strategies}.
+     * <br>This keeps commands from the same guild from racing each other when commands are not run inline.
+     * <br>Default {@code 0}, meaning lanes are disabled.
+     *
+     * @param  executionLanes
+     *         The number of lanes, or {@code 0} to disable them
+     *
+     * @return This builder
+     */
+    public CommandClientBuilder setExecutionLanes(int executionLanes)
+    {
+        this.executionLanes = Math.max(0, executionLanes);
+        return this;
+    }
+
+    /**
+     * Sets the {@link com.jagrosh.jdautilities.command.CooldownStore CooldownStore} holding the cooldowns
+     * of the {@link com.jagrosh.jdautilities.command.impl.CommandClientImpl CommandClientImpl}.
+     * <br>Bots sharded across several processes can use this to share cooldowns between them.
+     * <br>Default an {@link com.jagrosh.jdautilities.command.impl.InMemoryCooldownStore InMemoryCooldownStore}.
+     *
+     * @param  cooldownStore
+     *         The CooldownStore, or {@code null} to keep cooldowns in memory
+     *
+     * @return This builder
+     */
+    public CommandClientBuilder setCooldownStore(CooldownStore cooldownStore)
+    {
+        this.cooldownStore = cooldownStore;
+        return this;
+    }
+
     /**
      * Sets the {@link java.util.concurrent.ScheduledExecutorService ScheduledExecutorService} for the
      * {@link com.jagrosh.jdautilities.command.impl.CommandClientImpl CommandClientImpl}.
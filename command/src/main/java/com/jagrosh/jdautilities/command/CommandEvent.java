@@ -20,11 +20,13 @@ import java.util.ArrayList;
 import java.util.function.Consumer;
 
 import com.jagrosh.jdautilities.command.impl.CommandClientImpl;
+import com.jagrosh.jdautilities.commons.utils.MessageSplitter;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
 import net.dv8tion.jda.api.entities.channel.concrete.PrivateChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildMessageChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
@@ -53,11 +55,15 @@ import net.dv8tion.jda.internal.utils.Checks;
 public class CommandEvent
 {
     public static int MAX_MESSAGES = 2;
+    private static final MessageSplitter MESSAGE_SPLITTER = new MessageSplitter(MessageSplitter.MESSAGE_LIMIT);
     
     private final MessageReceivedEvent event;
-    private final String prefix;
+    private final int prefixLength;
+    private final int argsOffset;
+    private String prefix;
     private String args;
     private final CommandClient client;
+    private ArgumentSchema.Parsed parsedArguments;
     
     /**
      * Constructor for a CommandEvent.
@@ -77,10 +83,37 @@ public class CommandEvent
     public CommandEvent(MessageReceivedEvent event, String prefix, String args, CommandClient client)
     {
         this.event = event;
+        this.prefixLength = -1;
+        this.argsOffset = -1;
         this.prefix = prefix;
         this.args = args == null ? "" : args;
         this.client = client;
     }
+
+    /**
+     * Constructor for a CommandEvent whose prefix and arguments are regions of the message's raw content.
+     *
+     * <p>The prefix and arguments are only copied out of the raw content the first time they are requested.
+     *
+     * <p><b>You should not call this!</b>
+     * <br>It is a generated wrapper for a {@link net.dv8tion.jda.api.events.message.MessageReceivedEvent MessageReceivedEvent}.
+     *
+     * @param  event
+     *         The initial MessageReceivedEvent
+     * @param  prefixLength
+     *         The length of the prefix used to execute this command, at the start of the raw content
+     * @param  argsOffset
+     *         The index in the raw content the arguments start at
+     * @param  client
+     *         The {@link com.jagrosh.jdautilities.command.CommandClient CommandClient}
+     */
+    public CommandEvent(MessageReceivedEvent event, int prefixLength, int argsOffset, CommandClient client)
+    {
+        this.event = event;
+        this.prefixLength = prefixLength;
+        this.argsOffset = argsOffset;
+        this.client = client;
+    }
     
     /**
      * Returns the user's String arguments for the command.
@@ -90,6 +123,9 @@ public class CommandEvent
      */
     public String getArgs()
     {
+        // Events made with the String constructor have no region to copy from
+        if(args == null && argsOffset >= 0)
+            args = event.getMessage().getContentRaw().substring(argsOffset);
         return args;
     }
     
@@ -98,12 +134,283 @@ public class CommandEvent
         this.args = args;
     }
 
+    void setParsedArguments(ArgumentSchema.Parsed parsedArguments)
+    {
+        this.parsedArguments = parsedArguments;
+    }
+
+    /**
+     * Gets the arguments parsed with the {@link Command#getArgumentSchema() ArgumentSchema} of the Command.
+     *
+     * @return The parsed arguments, or {@code null} if the Command has no ArgumentSchema
+     */
+    public ArgumentSchema.Parsed getParsedArguments()
+    {
+        return parsedArguments;
+    }
+
+    /**
+     * Checks if an argument of the {@link Command#getArgumentSchema() ArgumentSchema} was provided.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @return {@code true} if the argument was provided
+     */
+    public boolean hasOption(String key)
+    {
+        return parsedArguments != null && parsedArguments.has(key);
+    }
+
+    /**
+     * Gets an argument as a String, or returns {@code null} if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @return The argument without its quotes, or null if it wasn't provided
+     */
+    public String optString(String key)
+    {
+        return optString(key, null);
+    }
+
+    /**
+     * Gets an argument as a String, or returns the default one if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     * @param  defaultValue
+     *         The value used in the absence of the argument
+     *
+     * @return The argument without its quotes, or the default value if it wasn't provided
+     */
+    public String optString(String key, String defaultValue)
+    {
+        String value = parsedArguments == null ? null : parsedArguments.getString(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Gets a {@code long} argument, or returns {@code 0} if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a {@code long}
+     *
+     * @return The argument, or 0 if it wasn't provided
+     */
+    public long optLong(String key)
+    {
+        return optLong(key, 0);
+    }
+
+    /**
+     * Gets a {@code long} argument, or returns the default one if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     * @param  defaultValue
+     *         The value used in the absence of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a {@code long}
+     *
+     * @return The argument, or the default value if it wasn't provided
+     */
+    public long optLong(String key, long defaultValue)
+    {
+        return parsedArguments == null ? defaultValue : parsedArguments.getValue(key, ArgumentSchema.Type.LONG, defaultValue);
+    }
+
+    /**
+     * Gets a {@code double} argument, or returns {@code 0.0} if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a {@code double}
+     *
+     * @return The argument, or 0.0 if it wasn't provided
+     */
+    public double optDouble(String key)
+    {
+        return optDouble(key, 0.0);
+    }
+
+    /**
+     * Gets a {@code double} argument, or returns the default one if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     * @param  defaultValue
+     *         The value used in the absence of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a {@code double}
+     *
+     * @return The argument, or the default value if it wasn't provided
+     */
+    public double optDouble(String key, double defaultValue)
+    {
+        if(!hasOption(key))
+            return defaultValue;
+        return Double.longBitsToDouble(parsedArguments.getValue(key, ArgumentSchema.Type.DOUBLE, 0));
+    }
+
+    /**
+     * Gets a {@code boolean} argument, or returns {@code false} if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a {@code boolean}
+     *
+     * @return The argument, or false if it wasn't provided
+     */
+    public boolean optBoolean(String key)
+    {
+        return optBoolean(key, false);
+    }
+
+    /**
+     * Gets a {@code boolean} argument, or returns the default one if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     * @param  defaultValue
+     *         The value used in the absence of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a {@code boolean}
+     *
+     * @return The argument, or the default value if it wasn't provided
+     */
+    public boolean optBoolean(String key, boolean defaultValue)
+    {
+        if(parsedArguments == null)
+            return defaultValue;
+        return parsedArguments.getValue(key, ArgumentSchema.Type.BOOLEAN, defaultValue ? 1 : 0) != 0;
+    }
+
+    /**
+     * Gets the ID of a user, role, channel or snowflake argument, or returns {@code 0} if it wasn't provided.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a user, role, channel or snowflake
+     *
+     * @return The ID, or 0 if it wasn't provided
+     */
+    public long optSnowflake(String key)
+    {
+        return parsedArguments == null ? 0 : parsedArguments.getValue(key, ArgumentSchema.Type.SNOWFLAKE, 0);
+    }
+
+    /**
+     * Gets a user argument as a User, or returns {@code null} if it wasn't provided or the User isn't cached.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a user
+     *
+     * @return The User, or null if it wasn't provided or isn't cached
+     */
+    public User optUser(String key)
+    {
+        long id = parsedArguments == null ? 0 : parsedArguments.getValue(key, ArgumentSchema.Type.USER, 0);
+        if(id == 0)
+            return null;
+        // Mentioned users are always resolved, even if they aren't cached
+        for(User user : event.getMessage().getMentions().getUsers())
+        {
+            if(user.getIdLong() == id)
+                return user;
+        }
+        return event.getJDA().getUserById(id);
+    }
+
+    /**
+     * Gets a user argument as a Member, or returns {@code null} if it wasn't provided or the Member isn't cached.
+     * <br>This will <b>always</b> return null when the CommandEvent was not executed in a Guild.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a user
+     *
+     * @return The Member, or null if it wasn't provided or isn't cached
+     */
+    public Member optMember(String key)
+    {
+        long id = parsedArguments == null ? 0 : parsedArguments.getValue(key, ArgumentSchema.Type.USER, 0);
+        if(id == 0 || !event.isFromGuild())
+            return null;
+        for(Member member : event.getMessage().getMentions().getMembers())
+        {
+            if(member.getIdLong() == id)
+                return member;
+        }
+        return event.getGuild().getMemberById(id);
+    }
+
+    /**
+     * Gets a role argument as a Role, or returns {@code null} if it wasn't provided or doesn't exist.
+     * <br>This will <b>always</b> return null when the CommandEvent was not executed in a Guild.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a role
+     *
+     * @return The Role, or null if it wasn't provided or doesn't exist
+     */
+    public Role optRole(String key)
+    {
+        long id = parsedArguments == null ? 0 : parsedArguments.getValue(key, ArgumentSchema.Type.ROLE, 0);
+        if(id == 0 || !event.isFromGuild())
+            return null;
+        return event.getGuild().getRoleById(id);
+    }
+
+    /**
+     * Gets a channel argument as a GuildChannel, or returns {@code null} if it wasn't provided or doesn't exist.
+     * <br>This will <b>always</b> return null when the CommandEvent was not executed in a Guild.
+     *
+     * @param  key
+     *         The name of the argument
+     *
+     * @throws IllegalArgumentException
+     *         If the argument isn't a channel
+     *
+     * @return The GuildChannel, or null if it wasn't provided or doesn't exist
+     */
+    public GuildChannel optGuildChannel(String key)
+    {
+        long id = parsedArguments == null ? 0 : parsedArguments.getValue(key, ArgumentSchema.Type.CHANNEL, 0);
+        if(id == 0 || !event.isFromGuild())
+            return null;
+        return event.getGuild().getGuildChannelById(id);
+    }
+
     /**
      * Returns the prefix used when this event was raised. Useful for figuring out what people invoked.
      *
      * @return Never null prefix used to raise event
      */
     public String getPrefix() {
+        if(prefix == null && prefixLength >= 0)
+            prefix = event.getMessage().getContentRaw().substring(0, prefixLength);
         return prefix;
     }
 
@@ -996,6 +1303,9 @@ public class CommandEvent
      * <br>Also nullifies usages of {@code @here} and {@code @everyone} so that they do not mention anyone.
      * <br>Useful for splitting long messages so that they can be sent in more than one 
      * {@link net.dv8tion.jda.api.entities.Message Message} at maximum potential length.
+     *
+     * <p>Code blocks split across Strings are closed and reopened, see
+     * {@link com.jagrosh.jdautilities.commons.utils.MessageSplitter MessageSplitter}.
      * 
      * @param  stringtoSend
      *         The String to split and send
@@ -1005,26 +1315,40 @@ public class CommandEvent
      *         in length
      */
     public static ArrayList<String> splitMessage(String stringtoSend)
+    {
+        return splitMessage(stringtoSend, MESSAGE_SPLITTER);
+    }
+
+    /**
+     * Splits a String into one or more Strings who's length does not exceed the provided limit.
+     * <br>Also nullifies usages of {@code @here} and {@code @everyone} so that they do not mention anyone.
+     * <br>Useful for splitting text that is sent somewhere other than message content, such as embed descriptions.
+     *
+     * @param  stringtoSend
+     *         The String to split and send
+     * @param  limit
+     *         The maximum length of each String
+     *
+     * @return An {@link java.util.ArrayList ArrayList} containing one or more Strings, with nullified
+     *         occurrences of {@code @here} and {@code @everyone}, and that do not exceed the limit in length
+     *
+     * @throws IllegalArgumentException
+     *         If the limit is too small, see {@link com.jagrosh.jdautilities.commons.utils.MessageSplitter#MessageSplitter(int)}
+     */
+    public static ArrayList<String> splitMessage(String stringtoSend, int limit)
+    {
+        return splitMessage(stringtoSend, limit == MessageSplitter.MESSAGE_LIMIT ? MESSAGE_SPLITTER : new MessageSplitter(limit));
+    }
+
+    private static ArrayList<String> splitMessage(String stringtoSend, MessageSplitter splitter)
     {
         ArrayList<String> msgs =  new ArrayList<>();
         if(stringtoSend!=null)
         {
-            stringtoSend = stringtoSend.replace("@everyone", "@\u0435veryone").replace("@here", "@h\u0435re").trim();
-            while(stringtoSend.length()>2000)
-            {
-                int leeway = 2000 - (stringtoSend.length()%2000);
-                int index = stringtoSend.lastIndexOf("\n", 2000);
-                if(index<leeway)
-                    index = stringtoSend.lastIndexOf(" ", 2000);
-                if(index<leeway)
-                    index=2000;
-                String temp = stringtoSend.substring(0,index).trim();
-                if(!temp.equals(""))
-                    msgs.add(temp);
-                stringtoSend = stringtoSend.substring(index).trim();
-            }
-            if(!stringtoSend.equals(""))
-                msgs.add(stringtoSend);
+            MessageSplitter.Chunks chunks = splitter.split(stringtoSend);
+            // The replacements are the same length, so they can be made per chunk instead of on the whole String
+            for(int i = 0; i < chunks.size(); i++)
+                msgs.add(chunks.get(i).replace("@everyone", "@\u0435veryone").replace("@here", "@h\u0435re"));
         }
         return msgs;
     }
@@ -1063,14 +1387,7 @@ public class CommandEvent
      */
     public boolean isOwner()
     {
-    	if(event.getAuthor().getId().equals(this.getClient().getOwnerId()))
-    	    return true;
-        if(this.getClient().getCoOwnerIds()==null)
-            return false;
-        for(String id : this.getClient().getCoOwnerIds())
-            if(id.equals(event.getAuthor().getId()))
-                return true;
-        return false;
+        return this.getClient().isOwner(event.getAuthor().getIdLong());
     }
     
     
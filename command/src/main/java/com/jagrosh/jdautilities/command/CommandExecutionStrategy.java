@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import com.jagrosh.jdautilities.command.impl.ExecutorExecutionStrategy;
+import com.jagrosh.jdautilities.command.impl.InlineExecutionStrategy;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Decides which thread runs a {@link com.jagrosh.jdautilities.command.Command Command},
+ * {@link com.jagrosh.jdautilities.command.SlashCommand SlashCommand} or
+ * {@link com.jagrosh.jdautilities.command.ContextMenu ContextMenu} once the
+ * {@link com.jagrosh.jdautilities.command.CommandClient CommandClient} has found it.
+ *
+ * <p>By default commands run {@link #inline() inline}, on the JDA event thread that delivered the event,
+ * meaning a single slow command holds up every event after it on that shard.
+ * <br>Other strategies hand commands off to other threads so the event thread can keep dispatching:
+ * <ul>
+ *     <li>{@link #virtualThreads()} - One virtual thread per command, where the JVM supports them.</li>
+ *     <li>{@link #boundedPool(int, int)} - A fixed pool of platform threads with a bounded queue.</li>
+ *     <li>{@link #fromExecutor(ExecutorService)} - Any other executor.</li>
+ * </ul>
+ *
+ * A default strategy is set with {@link CommandClientBuilder#setExecutionStrategy(CommandExecutionStrategy)}.
+ * <br>Additional strategies can be registered under a name with
+ * {@link CommandClientBuilder#addExecutionGroup(String, CommandExecutionStrategy)} and chosen per command
+ * via {@link Interaction#executionGroup}, {@link CommandBuilder#setExecutionGroup(String)} or
+ * {@link com.jagrosh.jdautilities.command.annotation.JDACommand#executionGroup() @JDACommand(executionGroup)},
+ * so heavy commands can be kept away from light ones.
+ */
+public interface CommandExecutionStrategy
+{
+    /**
+     * Runs the task for the provided interaction.
+     *
+     * @param  interaction
+     *         The command or context menu that is being run
+     * @param  task
+     *         The task running it
+     *
+     * @throws java.util.concurrent.RejectedExecutionException
+     *         If the task cannot be accepted, for instance because a queue is full.
+     */
+    void execute(Interaction interaction, Runnable task) throws RejectedExecutionException;
+
+    /**
+     * Gets the number of tasks that have been accepted but have not started running yet.
+     *
+     * @return The number of queued tasks
+     */
+    int getQueueDepth();
+
+    /**
+     * Gets the number of tasks that have been rejected by this strategy.
+     *
+     * @return The number of rejected tasks
+     */
+    long getRejectedCount();
+
+    /**
+     * Frees up any threads held by this strategy.
+     * <br>This is called when the {@link CommandClient#shutdown() CommandClient shuts down}.
+     */
+    default void shutdown() {}
+
+    /**
+     * Runs commands on the thread that delivered their event.
+     * <br>This is the default behavior.
+     *
+     * @return The inline strategy
+     */
+    static CommandExecutionStrategy inline()
+    {
+        return InlineExecutionStrategy.INSTANCE;
+    }
+
+    /**
+     * Runs each command on its own virtual thread.
+     *
+     * <p>If the running JVM does not support virtual threads, this logs a warning and falls back to
+     * a cached pool of platform threads.
+     *
+     * @return A new virtual thread strategy
+     */
+    static CommandExecutionStrategy virtualThreads()
+    {
+        return ExecutorExecutionStrategy.virtualThreads();
+    }
+
+    /**
+     * Runs commands on a fixed number of platform threads.
+     * <br>Commands are queued while all threads are busy, and rejected once {@code queueCapacity}
+     * commands are waiting.
+     *
+     * @param  threads
+     *         The number of threads, at least 1
+     * @param  queueCapacity
+     *         The number of commands that may wait for a thread, at least 1
+     *
+     * @return A new bounded pool strategy
+     */
+    static CommandExecutionStrategy boundedPool(int threads, int queueCapacity)
+    {
+        return ExecutorExecutionStrategy.boundedPool(threads, queueCapacity);
+    }
+
+    /**
+     * Runs commands on the provided {@link java.util.concurrent.ExecutorService ExecutorService}.
+     * <br>The executor is shut down alongside the strategy.
+     *
+     * @param  executor
+     *         The executor to run commands on
+     *
+     * @return A new strategy backed by the executor
+     */
+    static CommandExecutionStrategy fromExecutor(ExecutorService executor)
+    {
+        return new ExecutorExecutionStrategy(executor);
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe usage metrics for every {@link com.jagrosh.jdautilities.command.Command Command},
+ * {@link com.jagrosh.jdautilities.command.SlashCommand SlashCommand} and
+ * {@link com.jagrosh.jdautilities.command.ContextMenu ContextMenu} run by a
+ * {@link com.jagrosh.jdautilities.command.CommandClient CommandClient}.
+ *
+ * <p>Metrics are kept per command instance, so two commands sharing a name are counted separately.
+ * All counters are {@link java.util.concurrent.atomic.LongAdder LongAdder}s, meaning they can be updated
+ * from any number of threads without losing counts or contending on a lock.
+ *
+ * <p>The metrics of a client can be retrieved with {@link CommandClient#getCommandMetrics()}.
+ */
+public final class CommandMetrics
+{
+    private final Map<Interaction, Stats> stats = new ConcurrentHashMap<>();
+    // Uses summed by name, so looking them up by name doesn't scan every interaction
+    private final Map<String, LongAdder> usesByName = new ConcurrentHashMap<>();
+    private final LongAdder prefiltered = new LongAdder();
+    private final LongAdder prefilterRejections = new LongAdder();
+
+    /**
+     * Gets the metrics of an interaction.
+     *
+     * @param  interaction
+     *         The command or context menu
+     *
+     * @return The metrics of the interaction, never {@code null}
+     */
+    public Stats get(Interaction interaction)
+    {
+        Stats s = stats.get(interaction);
+        return s == null ? new Stats(nameOf(interaction), null) : s;
+    }
+
+    /**
+     * Gets the metrics of every interaction that has been recorded at least once.
+     *
+     * @return An unmodifiable view of the metrics, keyed by interaction
+     */
+    public Map<Interaction, Stats> getAll()
+    {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Gets the total number of uses of every interaction with the provided name.
+     *
+     * @param  name
+     *         The name of the command or context menu
+     *
+     * @return The number of uses
+     */
+    public long getUses(String name)
+    {
+        LongAdder uses = usesByName.get(name);
+        return uses == null ? 0 : uses.sum();
+    }
+
+    /**
+     * Records that an interaction was dispatched.
+     * <br>This is called by the CommandClient, and should not be called elsewhere.
+     *
+     * @param  interaction
+     *         The interaction that was dispatched
+     */
+    public void recordUse(Interaction interaction)
+    {
+        Stats s = stats(interaction);
+        s.uses.increment();
+        if(s.nameUses != null)
+            s.nameUses.increment();
+    }
+
+    /**
+     * Drops the metrics of an interaction, so an interaction added again later starts from zero.
+     * <br>This is called by the CommandClient when the interaction is removed, and should not be called elsewhere.
+     *
+     * @param  interaction
+     *         The interaction that was removed
+     */
+    public void remove(Interaction interaction)
+    {
+        Stats s = stats.remove(interaction);
+        if(s != null && s.nameUses != null)
+            s.nameUses.add(-s.getUses());
+    }
+
+    /**
+     * Records that an interaction finished running successfully.
+     * <br>This is called by the interaction, and should not be called elsewhere.
+     *
+     * @param  interaction
+     *         The interaction that ran
+     * @param  nanos
+     *         How long it ran for, in nanoseconds
+     */
+    public void recordSuccess(Interaction interaction, long nanos)
+    {
+        Stats s = stats(interaction);
+        s.successes.increment();
+        s.recordLatency(nanos);
+    }
+
+    /**
+     * Records that an interaction was terminated before running, such as when a check failed.
+     * <br>This is called by the interaction, and should not be called elsewhere.
+     *
+     * @param  interaction
+     *         The interaction that was terminated
+     */
+    public void recordTermination(Interaction interaction)
+    {
+        stats(interaction).terminations.increment();
+    }
+
+    /**
+     * Records that an interaction threw while running.
+     * <br>This is called by the interaction, and should not be called elsewhere.
+     *
+     * @param  interaction
+     *         The interaction that threw
+     * @param  nanos
+     *         How long it ran for before throwing, in nanoseconds
+     */
+    public void recordException(Interaction interaction, long nanos)
+    {
+        Stats s = stats(interaction);
+        s.exceptions.increment();
+        s.recordLatency(nanos);
+    }
+
+    /**
+     * Records that a message was checked by the first character pre-filter of the CommandClient.
+     * <br>This is called by the CommandClient, and should not be called elsewhere.
+     *
+     * @param  rejected
+     *         {@code true} if the message was rejected, as it can't start with a prefix
+     */
+    public void recordPrefilter(boolean rejected)
+    {
+        prefiltered.increment();
+        if(rejected)
+            prefilterRejections.increment();
+    }
+
+    /**
+     * Gets the number of messages checked by the first character pre-filter of the CommandClient.
+     * <br>Messages are not checked when a prefix function is set.
+     *
+     * @return The number of messages checked
+     */
+    public long getPrefilteredMessages()
+    {
+        return prefiltered.sum();
+    }
+
+    /**
+     * Gets the number of messages rejected by the first character pre-filter of the CommandClient,
+     * without looking up guild settings or matching prefixes.
+     *
+     * @return The number of messages rejected
+     */
+    public long getPrefilterRejections()
+    {
+        return prefilterRejections.sum();
+    }
+
+    private Stats stats(Interaction interaction)
+    {
+        return stats.computeIfAbsent(interaction, i -> {
+            String name = nameOf(i);
+            return new Stats(name, name == null ? null : usesByName.computeIfAbsent(name, n -> new LongAdder()));
+        });
+    }
+
+    private static String nameOf(Interaction interaction)
+    {
+        if(interaction instanceof Command)
+            return ((Command) interaction).getName();
+        if(interaction instanceof ContextMenu)
+            return ((ContextMenu) interaction).getName();
+        return null;
+    }
+
+    /**
+     * The metrics of a single interaction.
+     *
+     * <p>Latencies are kept in a histogram of power of two buckets of microseconds, bucket {@code i} holding
+     * runs that took less than {@code 2^i} microseconds (and at least {@code 2^(i-1)}).
+     */
+    public static final class Stats
+    {
+        /**
+         * The number of latency buckets, the last one holding every run of over 2^38 microseconds.
+         */
+        public static final int BUCKETS = 40;
+
+        private final String name;
+        private final LongAdder nameUses;
+        private final LongAdder uses = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder terminations = new LongAdder();
+        private final LongAdder exceptions = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+
+        private Stats(String name, LongAdder nameUses)
+        {
+            this.name = name;
+            this.nameUses = nameUses;
+        }
+
+        private void recordLatency(long nanos)
+        {
+            totalNanos.add(nanos);
+            long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            latencies.incrementAndGet(bucket);
+        }
+
+        /**
+         * Gets the name of the interaction these metrics belong to.
+         *
+         * @return The name
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Gets the number of times the interaction was dispatched.
+         *
+         * @return The number of uses
+         */
+        public long getUses()
+        {
+            return uses.sum();
+        }
+
+        /**
+         * Gets the number of times the interaction ran without throwing.
+         *
+         * @return The number of successful runs
+         */
+        public long getSuccesses()
+        {
+            return successes.sum();
+        }
+
+        /**
+         * Gets the number of times the interaction was terminated before running,
+         * such as for missing permissions or being on cooldown.
+         *
+         * @return The number of terminations
+         */
+        public long getTerminations()
+        {
+            return terminations.sum();
+        }
+
+        /**
+         * Gets the number of times the interaction threw while running.
+         *
+         * @return The number of exceptions
+         */
+        public long getExceptions()
+        {
+            return exceptions.sum();
+        }
+
+        /**
+         * Gets the average time the interaction ran for, successfully or not.
+         *
+         * @return The average latency in nanoseconds, or {@code 0} if it never ran
+         */
+        public long getAverageLatency()
+        {
+            long runs = getSuccesses() + getExceptions();
+            return runs == 0 ? 0 : totalNanos.sum() / runs;
+        }
+
+        /**
+         * Gets a copy of the latency histogram.
+         *
+         * @return The number of runs in each bucket
+         */
+        public long[] getLatencyHistogram()
+        {
+            long[] histogram = new long[BUCKETS];
+            for(int i = 0; i < BUCKETS; i++)
+                histogram[i] = latencies.get(i);
+            return histogram;
+        }
+
+        /**
+         * Estimates a latency percentile from the histogram.
+         * <br>The result is the upper bound of the bucket the percentile falls into, so it is accurate
+         * to within a factor of two.
+         *
+         * @param  percentile
+         *         The percentile, between {@code 0} and {@code 100}
+         *
+         * @return The estimated latency in microseconds, or {@code 0} if it never ran
+         */
+        public long getLatencyPercentile(double percentile)
+        {
+            long[] histogram = getLatencyHistogram();
+            long total = 0;
+            for(long count : histogram)
+                total += count;
+            if(total == 0)
+                return 0;
+            long target = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100D);
+            long seen = 0;
+            for(int i = 0; i < BUCKETS; i++)
+            {
+                seen += histogram[i];
+                if(seen >= target && seen > 0)
+                    return 1L << i;
+            }
+            return 1L << (BUCKETS - 1);
+        }
+    }
+}
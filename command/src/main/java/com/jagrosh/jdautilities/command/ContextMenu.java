@@ -95,6 +95,10 @@ public abstract class ContextMenu extends Interaction
     /**
      * Gets the proper cooldown key for this Command under the provided {@link GenericCommandInteractionEvent}.
      *
+     * <p>This key is used by the String based cooldown methods of the {@link CommandClient CommandClient}, such as
+     * {@link CommandClient#getRemainingCooldown(String)}, and refers to the same cooldown as the
+     * {@link CooldownKey CooldownKey} used when running.
+     *
      * @param event The ContextMenuEvent to generate the cooldown for.
      *
      * @return A String key to use when applying a cooldown.
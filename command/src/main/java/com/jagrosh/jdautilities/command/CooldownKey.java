@@ -0,0 +1,233 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+/**
+ * A cooldown key packed into three {@code long}s.
+ *
+ * <ul>
+ *     <li>The <b>head</b> is a 64-bit hash of the command name, with its lowest 4 bits replaced by the
+ *     ordinal of the {@link CooldownScope CooldownScope}, so the same IDs under different scopes never collide.</li>
+ *     <li>The <b>first</b> and <b>second</b> values are the IDs the scope applies to, in the same order as the
+ *     {@link CooldownScope CooldownScope} key formats, or {@code 0} when unused.</li>
+ * </ul>
+ *
+ * Keys created with {@link #of(String)} from a String in the format of the String based {@code getCooldownKey}
+ * methods are the same as the keys of their scope, so both refer to the same cooldown. Other Strings use a
+ * scope nibble of {@code 0xF}, which no CooldownScope uses, so they have their own keyspace.
+ *
+ * <p>The hash is stable across JVMs, so keys can be shared by several processes running the same bot.
+ */
+public final class CooldownKey
+{
+    private static final long STRING_SCOPE = 0xF;
+
+    private final long head;
+    private final long first;
+    private final long second;
+
+    private CooldownKey(long head, long first, long second)
+    {
+        this.head = head;
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Creates a key for a command under a scope.
+     *
+     * @param  name
+     *         The name of the command
+     * @param  scope
+     *         The scope of the cooldown
+     * @param  first
+     *         The first ID of the scope, or {@code 0} if unused
+     * @param  second
+     *         The second ID of the scope, or {@code 0} if unused
+     *
+     * @return The key
+     */
+    public static CooldownKey of(String name, CooldownScope scope, long first, long second)
+    {
+        return new CooldownKey((hash(name) & ~0xFL) | scope.ordinal(), first, second);
+    }
+
+    /**
+     * Creates a key from a String, such as one returned by
+     * {@link Command#getCooldownKey(CommandEvent) Command#getCooldownKey(CommandEvent)}.
+     *
+     * <p>Strings in the format of a {@link CooldownScope CooldownScope} give the same key as
+     * {@link #of(String, CooldownScope, long, long)} does for that scope, so they refer to the cooldown
+     * applied when the command runs.
+     *
+     * @param  key
+     *         The String key
+     *
+     * @return The key
+     */
+    public static CooldownKey of(String key)
+    {
+        if(key.endsWith("|Global"))
+            return of(key.substring(0, key.length() - 7), CooldownScope.GLOBAL, 0, 0);
+
+        // Formats are "name|X:id" or "name|U:id|X:id"
+        int lastBar = key.lastIndexOf('|');
+        char last = tagOf(key, lastBar);
+        long lastId = idOf(key, lastBar);
+        if(last != 0 && lastId >= 0)
+        {
+            int firstBar = lastBar > 0 ? key.lastIndexOf('|', lastBar - 1) : -1;
+            if(last != 'U' && tagOf(key, firstBar) == 'U')
+            {
+                long userId = idOf(key, firstBar, lastBar);
+                if(userId >= 0)
+                {
+                    String name = key.substring(0, firstBar);
+                    switch(last)
+                    {
+                        case 'C': return of(name, CooldownScope.USER_CHANNEL, userId, lastId);
+                        case 'G': return of(name, CooldownScope.USER_GUILD, userId, lastId);
+                        case 'S': return of(name, CooldownScope.USER_SHARD, userId, lastId);
+                    }
+                }
+            }
+            String name = key.substring(0, lastBar);
+            switch(last)
+            {
+                case 'U': return of(name, CooldownScope.USER, lastId, 0);
+                case 'C': return of(name, CooldownScope.CHANNEL, lastId, 0);
+                case 'G': return of(name, CooldownScope.GUILD, lastId, 0);
+                case 'S': return of(name, CooldownScope.SHARD, lastId, 0);
+            }
+        }
+        return new CooldownKey((hash(key) & ~0xFL) | STRING_SCOPE, 0, 0);
+    }
+
+    /**
+     * Creates a key from its packed values.
+     *
+     * @param  head
+     *         The head of the key
+     * @param  first
+     *         The first ID of the key
+     * @param  second
+     *         The second ID of the key
+     *
+     * @return The key
+     */
+    public static CooldownKey of(long head, long first, long second)
+    {
+        return new CooldownKey(head, first, second);
+    }
+
+    public long getHead()
+    {
+        return head;
+    }
+
+    public long getFirst()
+    {
+        return first;
+    }
+
+    public long getSecond()
+    {
+        return second;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if(!(obj instanceof CooldownKey))
+            return false;
+        CooldownKey other = (CooldownKey) obj;
+        return head == other.head && first == other.first && second == other.second;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode(mix(head, first, second));
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CooldownKey(" + Long.toHexString(head) + ":" + first + ":" + second + ")";
+    }
+
+    /**
+     * Mixes the three values of a key into one well distributed {@code long}.
+     *
+     * @param  head
+     *         The head of the key
+     * @param  first
+     *         The first ID of the key
+     * @param  second
+     *         The second ID of the key
+     *
+     * @return The mixed hash
+     */
+    public static long mix(long head, long first, long second)
+    {
+        long h = head * 0x9E3779B97F4A7C15L;
+        h = (h ^ first) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ second) * 0x165667B19E3779F9L;
+        return h ^ (h >>> 29);
+    }
+
+    // The tag of the "X:id" part following the bar at the provided index, or 0 if there is none
+    private static char tagOf(String key, int bar)
+    {
+        if(bar < 0 || bar + 2 >= key.length() || key.charAt(bar + 2) != ':')
+            return 0;
+        return key.charAt(bar + 1);
+    }
+
+    private static long idOf(String key, int bar)
+    {
+        return idOf(key, bar, key.length());
+    }
+
+    // The ID of the "X:id" part between the bar at the provided index and the end, or -1 if it isn't one
+    private static long idOf(String key, int bar, int end)
+    {
+        int start = bar + 3;
+        if(start >= end || end - start > 19)
+            return -1;
+        long id = 0;
+        for(int i = start; i < end; i++)
+        {
+            char c = key.charAt(i);
+            if(c < '0' || c > '9')
+                return -1;
+            id = id * 10 + (c - '0');
+        }
+        return id < 0 ? -1 : id;
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(String s)
+    {
+        long h = 0xcbf29ce484222325L;
+        for(int i = 0; i < s.length(); i++)
+        {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
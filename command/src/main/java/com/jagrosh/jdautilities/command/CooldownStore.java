@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds the cooldowns of a {@link com.jagrosh.jdautilities.command.CommandClient CommandClient}.
+ *
+ * <p>By default cooldowns are held in memory by a
+ * {@link com.jagrosh.jdautilities.command.impl.InMemoryCooldownStore InMemoryCooldownStore}, meaning each
+ * process running a bot enforces them separately. Bots sharded across several processes can instead share
+ * their cooldowns with a {@link com.jagrosh.jdautilities.command.impl.RemoteCooldownStore RemoteCooldownStore}
+ * connected to a {@link com.jagrosh.jdautilities.command.impl.CooldownStoreServer CooldownStoreServer},
+ * optionally wrapped in a {@link com.jagrosh.jdautilities.command.impl.CachingCooldownStore CachingCooldownStore}
+ * to avoid round trips for keys known to be on cooldown.
+ *
+ * <p>Durations are relative and in nanoseconds, so stores never need to agree on the current time.
+ * <br>Implementations must be thread-safe.
+ *
+ * @see CommandClientBuilder#setCooldownStore(CooldownStore)
+ */
+public interface CooldownStore
+{
+    /**
+     * Atomically checks if a key is on cooldown and, if it is not, puts it on cooldown.
+     * <br>Two simultaneous calls for the same key can never both acquire the cooldown.
+     *
+     * @param  key
+     *         The key
+     * @param  nanos
+     *         The duration of the cooldown in nanoseconds
+     *
+     * @return {@code 0} if the cooldown was acquired, otherwise the remaining time of the
+     *         existing cooldown in nanoseconds
+     */
+    long tryAcquire(CooldownKey key, long nanos);
+
+    /**
+     * Gets the remaining time of a key's cooldown.
+     *
+     * @param  key
+     *         The key
+     *
+     * @return The remaining time in nanoseconds, or {@code 0} if the key is not on cooldown
+     */
+    long getRemaining(CooldownKey key);
+
+    /**
+     * Puts a key on cooldown, replacing any cooldown it is already on.
+     *
+     * @param  key
+     *         The key
+     * @param  nanos
+     *         The duration of the cooldown in nanoseconds, the key is taken off cooldown if not positive
+     */
+    void apply(CooldownKey key, long nanos);
+
+    /**
+     * Asynchronous version of {@link #tryAcquire(CooldownKey, long)}.
+     * <br>By default this runs synchronously and returns a completed future.
+     *
+     * @param  key
+     *         The key
+     * @param  nanos
+     *         The duration of the cooldown in nanoseconds
+     *
+     * @return A future completing with {@code 0} if the cooldown was acquired, otherwise the
+     *         remaining time of the existing cooldown in nanoseconds
+     */
+    default CompletableFuture<Long> tryAcquireAsync(CooldownKey key, long nanos)
+    {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        try
+        {
+            future.complete(tryAcquire(key, nanos));
+        }
+        catch(RuntimeException e)
+        {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Runs {@link #tryAcquire(CooldownKey, long)} for several keys at once.
+     * <br>Each key is acquired independently, stores supporting it do so in a single round trip.
+     *
+     * @param  keys
+     *         The keys
+     * @param  nanos
+     *         The duration of the cooldown of each key in nanoseconds, in the same order as the keys
+     *
+     * @return The result of each acquisition, in the same order as the keys
+     */
+    default long[] tryAcquireAll(List<CooldownKey> keys, long[] nanos)
+    {
+        long[] results = new long[keys.size()];
+        for(int i = 0; i < results.length; i++)
+            results[i] = tryAcquire(keys.get(i), nanos[i]);
+        return results;
+    }
+
+    /**
+     * Asynchronous version of {@link #tryAcquireAll(List, long[])}.
+     * <br>By default this runs synchronously and returns a completed future.
+     *
+     * @param  keys
+     *         The keys
+     * @param  nanos
+     *         The duration of the cooldown of each key in nanoseconds, in the same order as the keys
+     *
+     * @return A future completing with the result of each acquisition, in the same order as the keys
+     */
+    default CompletableFuture<long[]> tryAcquireAllAsync(List<CooldownKey> keys, long[] nanos)
+    {
+        CompletableFuture<long[]> future = new CompletableFuture<>();
+        try
+        {
+            future.complete(tryAcquireAll(keys, nanos));
+        }
+        catch(RuntimeException e)
+        {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Evicts every expired cooldown held locally.
+     * <br>This is called by {@link CommandClient#cleanCooldowns()}.
+     */
+    default void expire() {}
+
+    /**
+     * Frees up any resources held by this store.
+     * <br>This is called when the {@link CommandClient#shutdown() CommandClient shuts down}.
+     */
+    default void shutdown() {}
+}
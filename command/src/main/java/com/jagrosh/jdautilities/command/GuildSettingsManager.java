@@ -18,6 +18,10 @@ package com.jagrosh.jdautilities.command;
 import net.dv8tion.jda.api.entities.Guild;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An implementable frame for classes that handle Guild-Specific
@@ -59,6 +63,62 @@ public interface GuildSettingsManager<T>
     @Nullable
     T getSettings(Guild guild);
 
+    /**
+     * Gets settings for a specified {@link net.dv8tion.jda.api.entities.Guild Guild} without blocking
+     * the calling thread.
+     *
+     * <p>The {@link CommandClient CommandClient} uses this before handling a message from a Guild: if the
+     * returned future is not yet complete, the message is handled once it completes, on a thread of the client's
+     * own, instead of blocking the gateway thread the message was received on. Messages from the same Guild are
+     * still handled in the order they were received, while other Guilds don't wait on them.
+     * <br>Each message waiting is handled with the Guild's current settings if this returns a completed future
+     * for it, or else with the settings the first future completed with.
+     * <br>By default this calls {@link #getSettings(Guild)} on the calling thread.
+     *
+     * @param  guild
+     *         The guild to get settings for.
+     *
+     * @return A future completed with the settings object for the guild, or with {@code null} if the guild
+     *         has no settings.
+     *
+     * @see    com.jagrosh.jdautilities.command.impl.CachingGuildSettingsManager
+     */
+    default CompletableFuture<T> getSettingsAsync(Guild guild)
+    {
+        return CompletableFuture.completedFuture(getSettings(guild));
+    }
+
+    /**
+     * Gets settings for several {@link net.dv8tion.jda.api.entities.Guild Guild}s at once.
+     *
+     * <p>Implementations backed by a database should override this to load every guild in a single query.
+     * <br>By default this calls {@link #getSettings(Guild)} for each guild.
+     *
+     * @param  guilds
+     *         The guilds to get settings for.
+     *
+     * @return The settings objects keyed by guild ID, without entries for guilds that have no settings.
+     */
+    default Map<Long, T> getSettings(Collection<Guild> guilds)
+    {
+        Map<Long, T> settings = new HashMap<>();
+        for(Guild guild : guilds)
+        {
+            T value = getSettings(guild);
+            if(value != null)
+                settings.put(guild.getIdLong(), value);
+        }
+        return settings;
+    }
+
+    /**
+     * Called when JDA has fired a {@link net.dv8tion.jda.api.events.guild.GuildReadyEvent GuildReadyEvent},
+     * with the guild that is ready.
+     *
+     * <p>Developers can implement this method to load the settings of guilds ahead of their first use.
+     */
+    default void preload(Guild guild) {}
+
     /**
      * Called when JDA has fired a {@link net.dv8tion.jda.api.events.session.ReadyEvent ReadyEvent}.
      *
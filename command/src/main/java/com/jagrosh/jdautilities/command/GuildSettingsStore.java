@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Where a {@link com.jagrosh.jdautilities.command.impl.WriteBehindGuildSettingsManager WriteBehindGuildSettingsManager}
+ * persists guild settings to.
+ *
+ * <p>Stores are written in batches, and should make each batch durable as a whole, rather than each
+ * Guild of it separately.
+ *
+ * @param  <T>
+ *         The specific type of the settings object.
+ *
+ * @see    com.jagrosh.jdautilities.command.impl.FileGuildSettingsStore
+ */
+public interface GuildSettingsStore<T>
+{
+    /**
+     * Loads the settings of every Guild.
+     *
+     * @return The settings objects keyed by guild ID
+     *
+     * @throws IOException
+     *         If the settings could not be loaded
+     */
+    Map<Long, T> load() throws IOException;
+
+    /**
+     * Writes a batch of changed settings.
+     *
+     * @param  changes
+     *         The settings objects keyed by guild ID, with a {@code null} value for guilds whose settings were removed
+     *
+     * @throws IOException
+     *         If the batch could not be written, in which case it will be written again later
+     */
+    void write(Map<Long, T> changes) throws IOException;
+
+    /**
+     * Closes resources held by this store, after the last batch was written.
+     *
+     * @throws IOException
+     *         If the store could not be closed
+     */
+    default void close() throws IOException {}
+}
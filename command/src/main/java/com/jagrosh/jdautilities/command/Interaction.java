@@ -15,13 +15,21 @@
  */
 package com.jagrosh.jdautilities.command;
 
+import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.GuildVoiceState;
+import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import net.dv8tion.jda.api.interactions.InteractionContextType;
+import net.dv8tion.jda.internal.utils.PermissionUtil;
 
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -102,6 +110,27 @@ public abstract class Interaction
      */
     protected boolean nsfwOnly = false;
 
+    /**
+     * The name of the execution group this interaction is run in.
+     * <br>Groups are registered with {@link CommandClientBuilder#addExecutionGroup(String, CommandExecutionStrategy)},
+     * allowing slow interactions to be run by a different {@link CommandExecutionStrategy CommandExecutionStrategy}
+     * than the {@link CommandClientBuilder#setExecutionStrategy(CommandExecutionStrategy) default one}.
+     * <br>Default {@code null}, meaning the default strategy is used.
+     */
+    protected String executionGroup = null;
+
+    /**
+     * Any {@link RateLimit RateLimits} this interaction is subject to, in addition to its {@link #cooldown}.
+     * <br>A use is only allowed if every limit allows it.
+     * <br>Default none.
+     */
+    protected RateLimit[] rateLimits = new RateLimit[0];
+
+    // Bots can reply to application commands without either of these, so they are not checked for them
+    private static final long REPLY_PERMISSIONS = Permission.getRaw(Permission.VIEW_CHANNEL, Permission.MESSAGE_EMBED_LINKS);
+
+    private volatile PermissionMasks permissionMasks;
+
     /**
      * Gets the {@link Interaction#cooldown cooldown} for the Interaction.
      *
@@ -152,6 +181,26 @@ public abstract class Interaction
         return ownerCommand;
     }
 
+    /**
+     * Gets the {@link Interaction#executionGroup executionGroup} for the Interaction.
+     *
+     * @return The executionGroup for the Interaction, or {@code null} if it uses the default strategy
+     */
+    public String getExecutionGroup()
+    {
+        return executionGroup;
+    }
+
+    /**
+     * Gets the {@link Interaction#rateLimits rateLimits} for the Interaction.
+     *
+     * @return The rateLimits for the Interaction
+     */
+    public RateLimit[] getRateLimits()
+    {
+        return rateLimits;
+    }
+
     /**
      * Returns the installation scope for this interaction.
      *
@@ -160,4 +209,282 @@ public abstract class Interaction
     public Set<InteractionContextType> getContexts() {
         return new HashSet<>(Arrays.asList(contexts));
     }
+
+    /**
+     * Resolves the {@link CooldownKey CooldownKey} of this interaction for its {@link #cooldownScope cooldownScope},
+     * falling back the same way the String based {@code getCooldownKey} methods do:
+     * guild scopes fall back to channel scopes outside of guilds, and shard scopes fall back
+     * to their shard-less equivalents when not sharding.
+     *
+     * @param  name
+     *         The name of the interaction
+     * @param  userId
+     *         The ID of the user using the interaction
+     * @param  guild
+     *         The guild the interaction is used in, or {@code null}
+     * @param  channelId
+     *         The ID of the channel the interaction is used in
+     * @param  jda
+     *         The JDA instance the interaction was received on
+     *
+     * @return The cooldown key
+     */
+    CooldownKey getCooldownKey(String name, long userId, Guild guild, long channelId, JDA jda)
+    {
+        return getCooldownKey(cooldownScope, name, userId, guild, channelId, jda);
+    }
+
+    static CooldownKey getCooldownKey(CooldownScope scope, String name, long userId, Guild guild, long channelId, JDA jda)
+    {
+        JDA.ShardInfo shardInfo = jda.getShardInfo();
+        boolean sharded = shardInfo != JDA.ShardInfo.SINGLE;
+        switch(scope)
+        {
+            case USER:         return CooldownKey.of(name, CooldownScope.USER, userId, 0);
+            case USER_GUILD:   return guild!=null ? CooldownKey.of(name, CooldownScope.USER_GUILD, userId, guild.getIdLong()) :
+                CooldownKey.of(name, CooldownScope.USER_CHANNEL, userId, channelId);
+            case USER_CHANNEL: return CooldownKey.of(name, CooldownScope.USER_CHANNEL, userId, channelId);
+            case GUILD:        return guild!=null ? CooldownKey.of(name, CooldownScope.GUILD, guild.getIdLong(), 0) :
+                CooldownKey.of(name, CooldownScope.CHANNEL, channelId, 0);
+            case CHANNEL:      return CooldownKey.of(name, CooldownScope.CHANNEL, channelId, 0);
+            case SHARD:        return sharded ? CooldownKey.of(name, CooldownScope.SHARD, shardInfo.getShardId(), 0) :
+                CooldownKey.of(name, CooldownScope.GLOBAL, 0, 0);
+            case USER_SHARD:   return sharded ? CooldownKey.of(name, CooldownScope.USER_SHARD, userId, shardInfo.getShardId()) :
+                CooldownKey.of(name, CooldownScope.USER, userId, 0);
+            case GLOBAL:
+            default:           return CooldownKey.of(name, CooldownScope.GLOBAL, 0, 0);
+        }
+    }
+
+    /**
+     * Takes a use from every one of this interaction's {@link #rateLimits rateLimits}.
+     * <br>If any limit rejects the use, the uses already taken from the others are given back.
+     *
+     * @param  client
+     *         The CommandClient running the interaction
+     * @param  name
+     *         The name of the interaction
+     * @param  userId
+     *         The ID of the user using the interaction
+     * @param  guild
+     *         The guild the interaction is used in, or {@code null}
+     * @param  channelId
+     *         The ID of the channel the interaction is used in
+     * @param  jda
+     *         The JDA instance the interaction was received on
+     *
+     * @return {@code null} if the use was allowed, otherwise an error message to respond with
+     */
+    String acquireRateLimits(CommandClient client, String name, long userId, Guild guild, long channelId, JDA jda)
+    {
+        if(rateLimits.length == 0)
+            return null;
+        long now = System.nanoTime();
+        CooldownKey[] keys = new CooldownKey[rateLimits.length];
+        for(int i = 0; i < rateLimits.length; i++)
+        {
+            keys[i] = getCooldownKey(rateLimits[i].getScope(), name, userId, guild, channelId, jda);
+            long wait = rateLimits[i].tryAcquire(keys[i], now);
+            if(wait > 0)
+            {
+                for(int j = 0; j < i; j++)
+                    rateLimits[j].refund(keys[j]);
+                long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+                CooldownScope scope = rateLimits[i].getScope();
+                if(guild == null && scope == CooldownScope.USER_GUILD)
+                    scope = CooldownScope.USER_CHANNEL;
+                else if(guild == null && scope == CooldownScope.GUILD)
+                    scope = CooldownScope.CHANNEL;
+                String front = client.getWarning()+" That command is being used too often, try again in "+seconds+" seconds";
+                return scope == CooldownScope.USER ? front+"!" : front+" "+scope.errorSpecification+"!";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives back the uses taken from this interaction's {@link #rateLimits rateLimits} by a successful
+     * {@link #acquireRateLimits(CommandClient, String, long, Guild, long, JDA) acquireRateLimits}, used when a
+     * later check stops the interaction from running.
+     *
+     * @param  name
+     *         The name of the interaction
+     * @param  userId
+     *         The ID of the user using the interaction
+     * @param  guild
+     *         The guild the interaction is used in, or {@code null}
+     * @param  channelId
+     *         The ID of the channel the interaction is used in
+     * @param  jda
+     *         The JDA instance the interaction was received on
+     */
+    void refundRateLimits(String name, long userId, Guild guild, long channelId, JDA jda)
+    {
+        for(RateLimit rateLimit : rateLimits)
+            rateLimit.refund(getCooldownKey(rateLimit.getScope(), name, userId, guild, channelId, jda));
+    }
+
+    /**
+     * Checks the {@link #userPermissions userPermissions} and {@link #botPermissions botPermissions} of this interaction
+     * against the effective permissions of the user and the bot.
+     * <br>Effective permissions are only computed once per scope (server, channel and voice channel) and compared
+     * against masks compiled from the permission arrays, rather than being computed once per required permission.
+     * The permissions of the bot are taken from the {@linkplain CommandClient#getSelfPermissions(GuildChannel) cache}
+     * of the client.
+     *
+     * @param  client
+     *         The CommandClient running the interaction, which caches the permissions of the bot
+     * @param  member
+     *         The Member using the interaction
+     * @param  channel
+     *         The channel the interaction is used in
+     * @param  checkUser
+     *         {@code true} to check the userPermissions as well as the botPermissions
+     * @param  fromInteraction
+     *         {@code true} if the interaction is an application command, in which case the bot doesn't need
+     *         {@link Permission#VIEW_CHANNEL VIEW_CHANNEL} or {@link Permission#MESSAGE_EMBED_LINKS MESSAGE_EMBED_LINKS}
+     *         to reply
+     *
+     * @return {@code null} if all required permissions are present, otherwise an error message to respond with
+     */
+    String checkPermissions(CommandClient client, Member member, GuildChannel channel, boolean checkUser, boolean fromInteraction)
+    {
+        String error = client.getError();
+        PermissionMasks masks = getPermissionMasks();
+
+        // user perms
+        if(checkUser && member != null && (masks.userChannel | masks.userGuild) != 0)
+        {
+            long channelPerms = masks.userChannel == 0 ? 0 : getEffectivePermission(channel, member);
+            long guildPerms = masks.userGuild == 0 ? 0 : getEffectivePermission(member);
+            if(!isApplied(channelPerms, masks.userChannel) || !isApplied(guildPerms, masks.userGuild))
+            {
+                // Only on failure, find the first missing permission so the message is the same as it always was
+                for(Permission p : userPermissions)
+                {
+                    if(p.isChannel() && !isApplied(channelPerms, p.getRawValue()))
+                        return String.format(userMissingPermMessage, error, p.getName(), "channel");
+                    if(!p.isChannel() && !isApplied(guildPerms, p.getRawValue()))
+                        return String.format(userMissingPermMessage, error, p.getName(), "server");
+                }
+            }
+        }
+
+        // bot perms
+        long ignored = fromInteraction ? REPLY_PERMISSIONS : 0;
+        long botChannel = masks.botChannel & ~ignored;
+        if((botChannel | masks.botVoice | masks.botGuild) == 0)
+            return null;
+        long channelPerms = botChannel == 0 ? 0 : client.getSelfPermissions(channel);
+        long guildPerms = masks.botGuild == 0 ? 0 : client.getSelfPermissions(channel.getGuild());
+        AudioChannel vc = null;
+        long voicePerms = 0;
+        if(masks.botVoice != 0)
+        {
+            GuildVoiceState gvc = member.getVoiceState();
+            vc = gvc == null ? null : gvc.getChannel();
+            voicePerms = vc == null ? 0 : client.getSelfPermissions(vc);
+        }
+        if(isApplied(channelPerms, botChannel) && isApplied(guildPerms, masks.botGuild)
+                && (masks.botVoice == 0 || (vc != null && isApplied(voicePerms, masks.botVoice))))
+            return null;
+        for(Permission p : botPermissions)
+        {
+            long raw = p.getRawValue();
+            if((raw & ignored) != 0)
+                continue;
+            if(!p.isChannel())
+            {
+                if(!isApplied(guildPerms, raw))
+                    return String.format(botMissingPermMessage, error, p.getName(), "server");
+            }
+            else if((raw & masks.botVoice) != 0)
+            {
+                if(vc == null)
+                    return error+" You must be in a voice channel to use that!";
+                if(!isApplied(voicePerms, raw))
+                    return String.format(botMissingPermMessage, error, p.getName(), "voice channel");
+            }
+            else if(!isApplied(channelPerms, raw))
+            {
+                return String.format(botMissingPermMessage, error, p.getName(), "channel");
+            }
+        }
+        return null;
+    }
+
+    private PermissionMasks getPermissionMasks()
+    {
+        PermissionMasks masks = permissionMasks;
+        // The arrays are protected and may be replaced after construction, so recompile if they were
+        if(masks == null || masks.userPermissions != userPermissions || masks.botPermissions != botPermissions)
+            permissionMasks = masks = new PermissionMasks(userPermissions, botPermissions);
+        return masks;
+    }
+
+    private static long getEffectivePermission(GuildChannel channel, Member member)
+    {
+        return PermissionUtil.getEffectivePermission(channel.getPermissionContainer(), member);
+    }
+
+    private static long getEffectivePermission(Member member)
+    {
+        // Administrators implicitly have every permission on the server level
+        long permissions = PermissionUtil.getEffectivePermission(member);
+        return isApplied(permissions, Permission.ADMINISTRATOR.getRawValue()) ? ~0L : permissions;
+    }
+
+    private static boolean isApplied(long permissions, long required)
+    {
+        return (permissions & required) == required;
+    }
+
+    /**
+     * The required permissions of an interaction, compiled into raw masks by the scope they are checked in.
+     */
+    private static final class PermissionMasks
+    {
+        private final Permission[] userPermissions;
+        private final Permission[] botPermissions;
+        private final long userChannel;
+        private final long userGuild;
+        private final long botChannel;
+        private final long botVoice;
+        private final long botGuild;
+
+        private PermissionMasks(Permission[] userPermissions, Permission[] botPermissions)
+        {
+            this.userPermissions = userPermissions;
+            this.botPermissions = botPermissions;
+            long userChannel = 0, userGuild = 0;
+            if(userPermissions != null)
+            {
+                for(Permission p : userPermissions)
+                {
+                    if(p.isChannel())
+                        userChannel |= p.getRawValue();
+                    else
+                        userGuild |= p.getRawValue();
+                }
+            }
+            long botChannel = 0, botVoice = 0, botGuild = 0;
+            if(botPermissions != null)
+            {
+                for(Permission p : botPermissions)
+                {
+                    if(!p.isChannel())
+                        botGuild |= p.getRawValue();
+                    else if(p.name().startsWith("VOICE"))
+                        botVoice |= p.getRawValue();
+                    else
+                        botChannel |= p.getRawValue();
+                }
+            }
+            this.userChannel = userChannel;
+            this.userGuild = userGuild;
+            this.botChannel = botChannel;
+            this.botVoice = botVoice;
+            this.botGuild = botGuild;
+        }
+    }
 }
@@ -15,10 +15,6 @@
  */
 package com.jagrosh.jdautilities.command;
 
-import net.dv8tion.jda.api.Permission;
-import net.dv8tion.jda.api.entities.GuildVoiceState;
-import net.dv8tion.jda.api.entities.Member;
-import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
 import net.dv8tion.jda.api.interactions.IntegrationType;
 import net.dv8tion.jda.api.interactions.InteractionContextType;
 import net.dv8tion.jda.api.interactions.commands.DefaultMemberPermissions;
@@ -46,101 +42,50 @@ public abstract class MessageContextMenu extends ContextMenu
             return;
         }
 
+        // rate limit check, ignoring owner
+        if(rateLimits.length>0 && !(event.isOwner()))
+        {
+            String error = acquireRateLimits(event.getClient(), getName(), event.getUser().getIdLong(), event.getGuild(), event.getChannelIdLong(), event.getJDA());
+            if(error!=null)
+            {
+                terminate(event, error);
+                return;
+            }
+        }
+
         // cooldown check, ignoring owner
         if(cooldown>0 && !(event.isOwner()))
         {
-            String key = getCooldownKey(event);
-            int remaining = event.getClient().getRemainingCooldown(key);
+            CooldownKey key = getCooldownKey(getName(), event.getUser().getIdLong(), event.getGuild(), event.getChannelIdLong(), event.getJDA());
+            int remaining = event.getClient().acquireCooldown(key, cooldown);
             if(remaining>0)
             {
+                // The command won't run, so the uses taken from the rate limits don't count
+                refundRateLimits(getName(), event.getUser().getIdLong(), event.getGuild(), event.getChannelIdLong(), event.getJDA());
                 terminate(event, getCooldownError(event, remaining, event.getClient()));
                 return;
             }
-            else event.getClient().applyCooldown(key, cooldown);
         }
 
         // availability check
         if(event.isFromGuild())
         {
-            //user perms
-            if (forceUserPermissions)
+            // user perms are only checked if forced, bot perms are always checked
+            String permissionError = checkPermissions(event.getClient(), event.getMember(), event.getGuildChannel(),
+                forceUserPermissions, true);
+            if(permissionError!=null)
             {
-                for(Permission p: userPermissions)
-                {
-                    // Member will never be null because this is only ran in a server (text channel)
-                    if(event.getMember() == null)
-                        continue;
-
-                    if(p.isChannel())
-                    {
-                        if(!event.getMember().hasPermission(event.getGuildChannel(), p))
-                        {
-                            terminate(event, String.format(userMissingPermMessage, event.getClient().getError(), p.getName(), "channel"));
-                            return;
-                        }
-                    }
-                    else
-                    {
-                        if(!event.getMember().hasPermission(p))
-                        {
-                            terminate(event, String.format(userMissingPermMessage, event.getClient().getError(), p.getName(), "server"));
-                            return;
-                        }
-                    }
-                }
-            }
-
-            // bot perms
-            for(Permission p: botPermissions)
-            {
-                // We can ignore this permission because bots can reply with embeds even without either of these perms.
-                // The only thing stopping them is the user's ability to use Application Commands.
-                // It's extremely dumb, but what more can you do.
-                if (p == Permission.VIEW_CHANNEL || p == Permission.MESSAGE_EMBED_LINKS)
-                    continue;
-
-                Member selfMember = event.getGuild() == null ? null : event.getGuild().getSelfMember();
-                if(p.isChannel())
-                {
-                    if(p.name().startsWith("VOICE"))
-                    {
-                        GuildVoiceState gvc = event.getMember().getVoiceState();
-                        AudioChannel vc = gvc == null ? null : gvc.getChannel();
-                        if(vc==null)
-                        {
-                            terminate(event, event.getClient().getError()+" You must be in a voice channel to use that!");
-                            return;
-                        }
-                        else if(!selfMember.hasPermission(vc, p))
-                        {
-                            terminate(event, String.format(botMissingPermMessage, event.getClient().getError(), p.getName(), "voice channel"));
-                            return;
-                        }
-                    }
-                    else
-                    {
-                        if(!selfMember.hasPermission(event.getGuildChannel(), p))
-                        {
-                            terminate(event, String.format(botMissingPermMessage, event.getClient().getError(), p.getName(), "channel"));
-                            return;
-                        }
-                    }
-                }
-                else
-                {
-                    if(!selfMember.hasPermission(p))
-                    {
-                        terminate(event, String.format(botMissingPermMessage, event.getClient().getError(), p.getName(), "server"));
-                        return;
-                    }
-                }
+                terminate(event, permissionError);
+                return;
             }
         }
 
         // run
+        long start = System.nanoTime();
         try {
             execute(event);
         } catch(Throwable t) {
+            event.getClient().getCommandMetrics().recordException(this, System.nanoTime() - start);
             if(event.getClient().getListener() != null)
             {
                 event.getClient().getListener().onMessageContextMenuException(event, this, t);
@@ -149,6 +94,7 @@ public abstract class MessageContextMenu extends ContextMenu
             // otherwise we rethrow
             throw t;
         }
+        event.getClient().getCommandMetrics().recordSuccess(this, System.nanoTime() - start);
 
         if(event.getClient().getListener() != null)
             event.getClient().getListener().onCompletedMessageContextMenu(event, this);
@@ -166,6 +112,7 @@ public abstract class MessageContextMenu extends ContextMenu
 
     private void terminate(MessageContextMenuEvent event, String message)
     {
+        event.getClient().getCommandMetrics().recordTermination(this);
         if(message!=null)
             event.reply(message).setEphemeral(true).queue();
         if(event.getClient().getListener()!=null)
@@ -159,13 +159,6 @@ public class MessageContextMenuEvent extends MessageContextInteractionEvent
      */
     public boolean isOwner()
     {
-        if(getUser().getId().equals(this.getClient().getOwnerId()))
-            return true;
-        if(this.getClient().getCoOwnerIds()==null)
-            return false;
-        for(String id : this.getClient().getCoOwnerIds())
-            if(id.equals(getUser().getId()))
-                return true;
-        return false;
+        return this.getClient().isOwner(getUser().getIdLong());
     }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import net.dv8tion.jda.api.entities.Guild;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link GuildSettingsManager GuildSettingsManager} whose settings can be changed, persisting changes
+ * in the background rather than on every change.
+ *
+ * <p>Changes are visible to {@link #getSettings(Guild)} immediately, and are only marked dirty until they are
+ * written. Implementations should write every dirty Guild in batches, writing a Guild changed several times
+ * between two writes only once, and must write everything still dirty on {@link #shutdown()}.
+ *
+ * @param  <T>
+ *         The specific type of the settings object.
+ *
+ * @see    com.jagrosh.jdautilities.command.impl.WriteBehindGuildSettingsManager
+ */
+public interface MutableGuildSettingsManager<T> extends GuildSettingsManager<T>
+{
+    /**
+     * Sets the settings for a specified {@link net.dv8tion.jda.api.entities.Guild Guild}.
+     *
+     * @param  guild
+     *         The guild to set settings for.
+     * @param  settings
+     *         The new settings object, or {@code null} to remove the guild's settings.
+     */
+    void setSettings(Guild guild, @Nullable T settings);
+
+    /**
+     * Marks the settings of a specified {@link net.dv8tion.jda.api.entities.Guild Guild} as changed, after
+     * the settings object returned by {@link #getSettings(Guild)} was modified in place.
+     *
+     * @param  guild
+     *         The guild whose settings were changed.
+     */
+    void markDirty(Guild guild);
+
+    /**
+     * Writes the settings of every dirty {@link net.dv8tion.jda.api.entities.Guild Guild} now,
+     * rather than waiting for the next scheduled write.
+     */
+    void flush();
+}
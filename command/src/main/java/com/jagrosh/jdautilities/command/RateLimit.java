@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import net.dv8tion.jda.internal.utils.Checks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A burst tolerant rate limit, allowing a number of uses per period under a {@link CooldownScope CooldownScope}.
+ *
+ * <p>Unlike a {@link Interaction#cooldown cooldown}, which allows a single use per period, a rate limit of
+ * {@code 5} uses per {@code 10} seconds allows up to 5 uses in a burst, after which one more use becomes
+ * available every 2 seconds.
+ * <br>Several rate limits can be stacked on one command through {@link Interaction#rateLimits}, for example
+ * 5 uses per 10 seconds per user and 30 uses per minute per guild. A use is only allowed if every limit
+ * allows it, and a use rejected by one limit doesn't count towards the others.
+ *
+ * <p>Limits are enforced with the generic cell rate algorithm: each key only stores the time at which its
+ * bucket will be full again, updated with a single compare-and-set, so checks never lock.
+ * <br>The state of a limit is held by the RateLimit itself, keyed by the name of the command as well as the
+ * IDs of its scope, so an instance shared between several commands still limits each of them separately.
+ */
+public final class RateLimit
+{
+    private static final int SWEEP_INTERVAL = 4096;
+
+    private final int permits;
+    private final long periodNanos;
+    private final long intervalNanos;
+    private final CooldownScope scope;
+    private final Map<CooldownKey, AtomicLong> arrivals = new ConcurrentHashMap<>();
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    /**
+     * Creates a rate limit.
+     *
+     * @param  permits
+     *         The number of uses allowed per period
+     * @param  seconds
+     *         The period in seconds
+     * @param  scope
+     *         The scope the limit applies to
+     */
+    public RateLimit(int permits, int seconds, CooldownScope scope)
+    {
+        this(permits, seconds, TimeUnit.SECONDS, scope);
+    }
+
+    /**
+     * Creates a rate limit.
+     *
+     * @param  permits
+     *         The number of uses allowed per period
+     * @param  period
+     *         The period
+     * @param  unit
+     *         The unit of the period
+     * @param  scope
+     *         The scope the limit applies to
+     */
+    public RateLimit(int permits, long period, TimeUnit unit, CooldownScope scope)
+    {
+        Checks.positive(permits, "Permits");
+        Checks.positive(period, "Period");
+        Checks.notNull(unit, "TimeUnit");
+        Checks.notNull(scope, "CooldownScope");
+        this.permits = permits;
+        this.periodNanos = unit.toNanos(period);
+        this.intervalNanos = Math.max(1, periodNanos / permits);
+        this.scope = scope;
+    }
+
+    public int getPermits()
+    {
+        return permits;
+    }
+
+    public long getPeriod(TimeUnit unit)
+    {
+        return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public CooldownScope getScope()
+    {
+        return scope;
+    }
+
+    /**
+     * Tries to take a use from the key's bucket.
+     *
+     * @param  key
+     *         The key, for this limit's {@link #getScope() scope}
+     * @param  now
+     *         The current {@link System#nanoTime()}
+     *
+     * @return {@code 0} if the use was allowed, otherwise the time in nanoseconds until it would be
+     */
+    public long tryAcquire(CooldownKey key, long now)
+    {
+        if(acquisitions.incrementAndGet() % SWEEP_INTERVAL == 0)
+            sweep(now);
+        AtomicLong arrival = arrivals.computeIfAbsent(key, k -> new AtomicLong(now));
+        while(true)
+        {
+            long tat = arrival.get();
+            // A theoretical arrival time in the past means the bucket is full
+            long next = (tat - now > 0 ? tat : now) + intervalNanos;
+            long wait = next - now - periodNanos;
+            if(wait > 0)
+                return wait;
+            if(arrival.compareAndSet(tat, next))
+                return 0;
+        }
+    }
+
+    /**
+     * Gives back a use taken with {@link #tryAcquire(CooldownKey, long)}, used when another
+     * limit stacked with this one rejected it.
+     *
+     * @param  key
+     *         The key the use was taken from
+     */
+    public void refund(CooldownKey key)
+    {
+        AtomicLong arrival = arrivals.get(key);
+        if(arrival != null)
+            arrival.addAndGet(-intervalNanos);
+    }
+
+    private void sweep(long now)
+    {
+        // Full buckets hold no information, so they can be dropped
+        arrivals.entrySet().removeIf(entry -> entry.getValue().get() - now <= 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RateLimit(" + permits + "/" + TimeUnit.NANOSECONDS.toMillis(periodNanos) + "ms, " + scope + ")";
+    }
+}
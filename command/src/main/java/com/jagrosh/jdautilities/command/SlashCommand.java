@@ -17,11 +17,8 @@ package com.jagrosh.jdautilities.command;
 
 import com.jagrosh.jdautilities.commons.utils.TranslateUtil;
 import net.dv8tion.jda.annotations.ForRemoval;
-import net.dv8tion.jda.api.Permission;
-import net.dv8tion.jda.api.entities.GuildVoiceState;
-import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
-import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.interactions.DiscordLocale;
 import net.dv8tion.jda.api.interactions.IntegrationType;
@@ -233,7 +230,7 @@ public abstract class SlashCommand extends Command
 
         // is allowed check
         try {
-            if(!isAllowed(event.getTextChannel()))
+            if(usesTopicTags && !isAllowed(client.getTopicTags(event.getTextChannel())))
             {
                 terminate(event, "That command cannot be used in this channel!", client);
                 return;
@@ -243,88 +240,23 @@ public abstract class SlashCommand extends Command
         }
 
         // required role check
-        if(requiredRole!=null)
-            if(!(event.getChannelType() == ChannelType.TEXT) || event.getMember().getRoles().stream().noneMatch(r -> r.getName().equalsIgnoreCase(requiredRole)))
+        if(requiredRole!=null || requiredRoleIds.length>0)
+            if(!(event.getChannelType() == ChannelType.TEXT) || !hasRequiredRole(client, event.getMember(), requiredRole))
             {
-                terminate(event, client.getError()+" You must have a role called `"+requiredRole+"` to use that!", client);
+                terminate(event, getRequiredRoleError(client, event.getGuild(), requiredRole), client);
                 return;
             }
 
         // availability check
         if(event.getChannelType() != ChannelType.PRIVATE)
         {
-            //user perms
-            if (forceUserPermissions)
+            // user perms are only checked if forced, bot perms are always checked
+            String permissionError = checkPermissions(client, event.getMember(), event.getGuildChannel(),
+                forceUserPermissions, true);
+            if(permissionError!=null)
             {
-                for(Permission p: userPermissions)
-                {
-                    // Member will never be null because this is only ran in a server (text channel)
-                    if(event.getMember() == null)
-                        continue;
-
-                    if(p.isChannel())
-                    {
-                        if(!event.getMember().hasPermission(event.getGuildChannel(), p))
-                        {
-                            terminate(event, String.format(userMissingPermMessage, client.getError(), p.getName(), "channel"), client);
-                            return;
-                        }
-                    }
-                    else
-                    {
-                        if(!event.getMember().hasPermission(p))
-                        {
-                            terminate(event, String.format(userMissingPermMessage, client.getError(), p.getName(), "server"), client);
-                            return;
-                        }
-                    }
-                }
-            }
-
-            // bot perms
-            for(Permission p: botPermissions)
-            {
-                // We can ignore this permission because bots can reply with embeds even without either of these perms.
-                // The only thing stopping them is the user's ability to use Application Commands.
-                // It's extremely dumb, but what more can you do.
-                if (p == Permission.VIEW_CHANNEL || p == Permission.MESSAGE_EMBED_LINKS)
-                    continue;
-
-                Member selfMember = event.getGuild() == null ? null : event.getGuild().getSelfMember();
-                if(p.isChannel())
-                {
-                    if((p.name().startsWith("VOICE")))
-                    {
-                        GuildVoiceState gvc = event.getMember().getVoiceState();
-                        AudioChannel vc = gvc == null ? null : gvc.getChannel();
-                        if(vc==null)
-                        {
-                            terminate(event, client.getError()+" You must be in a voice channel to use that!", client);
-                            return;
-                        }
-                        else if(!selfMember.hasPermission(vc, p))
-                        {
-                            terminate(event, String.format(botMissingPermMessage, client.getError(), p.getName(), "voice channel"), client);
-                            return;
-                        }
-                    }
-                    else
-                    {
-                        if(!selfMember.hasPermission(event.getGuildChannel(), p))
-                        {
-                            terminate(event, String.format(botMissingPermMessage, client.getError(), p.getName(), "channel"), client);
-                            return;
-                        }
-                    }
-                }
-                else
-                {
-                    if(!selfMember.hasPermission(p))
-                    {
-                        terminate(event, String.format(botMissingPermMessage, client.getError(), p.getName(), "server"), client);
-                        return;
-                    }
-                }
+                terminate(event, permissionError, client);
+                return;
             }
 
             // nsfw check
@@ -335,23 +267,37 @@ public abstract class SlashCommand extends Command
             }
         }
 
+        // rate limit check, ignoring owner
+        if(rateLimits.length>0 && !(isOwner(event, client)))
+        {
+            String error = acquireRateLimits(client, name, event.getUser().getIdLong(), event.getGuild(), event.getChannelIdLong(), event.getJDA());
+            if(error!=null)
+            {
+                terminate(event, error, client);
+                return;
+            }
+        }
+
         // cooldown check, ignoring owner
         if(cooldown>0 && !(isOwner(event, client)))
         {
-            String key = getCooldownKey(event);
-            int remaining = client.getRemainingCooldown(key);
+            CooldownKey key = getCooldownKey(name, event.getUser().getIdLong(), event.getGuild(), event.getChannelIdLong(), event.getJDA());
+            int remaining = client.acquireCooldown(key, cooldown);
             if(remaining>0)
             {
+                // The command won't run, so the uses taken from the rate limits don't count
+                refundRateLimits(name, event.getUser().getIdLong(), event.getGuild(), event.getChannelIdLong(), event.getJDA());
                 terminate(event, getCooldownError(event, remaining, client), client);
                 return;
             }
-            else client.applyCooldown(key, cooldown);
         }
 
         // run
+        long start = System.nanoTime();
         try {
             execute(event);
         } catch(Throwable t) {
+            client.getCommandMetrics().recordException(this, System.nanoTime() - start);
             if(client.getListener() != null)
             {
                 client.getListener().onSlashCommandException(event, this, t);
@@ -360,6 +306,7 @@ public abstract class SlashCommand extends Command
             // otherwise we rethrow
             throw t;
         }
+        client.getCommandMetrics().recordSuccess(this, System.nanoTime() - start);
 
         if(client.getListener() != null)
             client.getListener().onCompletedSlashCommand(event, this);
@@ -375,14 +322,7 @@ public abstract class SlashCommand extends Command
      */
     public boolean isOwner(SlashCommandEvent event, CommandClient client)
     {
-        if(event.getUser().getId().equals(client.getOwnerId()))
-            return true;
-        if(client.getCoOwnerIds()==null)
-            return false;
-        for(String id : client.getCoOwnerIds())
-            if(id.equals(event.getUser().getId()))
-                return true;
-        return false;
+        return client.isOwner(event.getUser().getIdLong());
     }
 
     /**
@@ -542,6 +482,7 @@ public abstract class SlashCommand extends Command
 
     private void terminate(SlashCommandEvent event, String message, CommandClient client)
     {
+        client.getCommandMetrics().recordTermination(this);
         if(message!=null)
             event.reply(message).setEphemeral(true).queue();
         if(client.getListener()!=null)
@@ -552,6 +493,10 @@ public abstract class SlashCommand extends Command
      * Gets the proper cooldown key for this Command under the provided
      * {@link SlashCommandEvent SlashCommandEvent}.
      *
+     * <p>This key is used by the String based cooldown methods of the {@link CommandClient CommandClient}, such as
+     * {@link CommandClient#getRemainingCooldown(String)}, and refers to the same cooldown as the
+     * {@link CooldownKey CooldownKey} used when running.
+     *
      * @param  event
      *         The CommandEvent to generate the cooldown for.
      *
@@ -568,12 +513,10 @@ public abstract class SlashCommand extends Command
             case GUILD:        return event.getGuild()!=null ? cooldownScope.genKey(name,event.getGuild().getIdLong()) :
                     CooldownScope.CHANNEL.genKey(name,event.getChannel().getIdLong());
             case CHANNEL:      return cooldownScope.genKey(name,event.getChannel().getIdLong());
-            case SHARD:
-                event.getJDA().getShardInfo();
-                return cooldownScope.genKey(name, event.getJDA().getShardInfo().getShardId());
-            case USER_SHARD:
-                event.getJDA().getShardInfo();
-                return cooldownScope.genKey(name,event.getUser().getIdLong(),event.getJDA().getShardInfo().getShardId());
+            case SHARD:        return event.getJDA().getShardInfo()!= JDA.ShardInfo.SINGLE ? cooldownScope.genKey(name, event.getJDA().getShardInfo().getShardId()) :
+                    CooldownScope.GLOBAL.genKey(name, 0);
+            case USER_SHARD:   return event.getJDA().getShardInfo()!= JDA.ShardInfo.SINGLE ? cooldownScope.genKey(name,event.getUser().getIdLong(),event.getJDA().getShardInfo().getShardId()) :
+                    CooldownScope.USER.genKey(name, event.getUser().getIdLong());
             case GLOBAL:       return cooldownScope.genKey(name, 0);
             default:           return "";
         }
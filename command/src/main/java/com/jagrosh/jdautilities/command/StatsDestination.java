@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import com.jagrosh.jdautilities.command.impl.BotListStatsDestination;
+import net.dv8tion.jda.api.JDA;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A destination the guild count of a bot is reported to, such as a bot list.
+ *
+ * <p>The {@link CommandClient CommandClient} coalesces guild joins, leaves and shard starts over a
+ * {@linkplain CommandClientBuilder#setStatsReportWindow(long, java.util.concurrent.TimeUnit) window}, and then
+ * reports once to every destination, with the guild count of every shard of the
+ * {@link net.dv8tion.jda.api.sharding.ShardManager ShardManager} added together.
+ *
+ * @see CommandClientBuilder#addStatsDestination(StatsDestination)
+ */
+@FunctionalInterface
+public interface StatsDestination
+{
+    /**
+     * Reports the guild count of the bot.
+     * <br>This is called from the scheduled executor of the CommandClient, so it should not block for long.
+     *
+     * @param  jda
+     *         A JDA instance of the bot, which can be used for its HTTP client and self user
+     * @param  guildCount
+     *         The number of guilds the bot is in, across all shards
+     * @param  shardCount
+     *         The total number of shards of the bot
+     */
+    void send(JDA jda, int guildCount, int shardCount);
+
+    /**
+     * Reports to <a href="https://www.carbonitex.net/">carbonitex.net</a>.
+     *
+     * @param  key
+     *         The Carbonitex key
+     *
+     * @return The destination
+     */
+    static StatsDestination carbonitex(String key)
+    {
+        return BotListStatsDestination.carbonitex(key);
+    }
+
+    /**
+     * Reports to <a href="https://discord.bots.gg/">discord.bots.gg</a>.
+     *
+     * @param  key
+     *         The Discord Bots API key
+     *
+     * @return The destination
+     */
+    static StatsDestination discordBotsGG(String key)
+    {
+        return BotListStatsDestination.discordBotsGG(key);
+    }
+
+    /**
+     * Only logs the reported stats, without sending them anywhere.
+     * <br>Useful as a stand-in for real destinations while testing.
+     *
+     * @return The destination
+     */
+    static StatsDestination logging()
+    {
+        return (jda, guildCount, shardCount) -> LoggerFactory.getLogger(StatsDestination.class)
+            .info("Stats reported: {} guilds across {} shards", guildCount, shardCount);
+    }
+}
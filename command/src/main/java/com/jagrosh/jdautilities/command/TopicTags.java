@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command;
+
+import com.jagrosh.jdautilities.command.impl.CaseInsensitiveIndex;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The topic tags of a channel topic, parsed once into a set of allowed and denied names.
+ *
+ * <p>A tag is any {@code {name}} in the topic, allowing the command or category with that name, or
+ * {@code {-name}}, denying it. {@code {-all}} denies every command not otherwise allowed.
+ * <br>Tags are matched ignoring case, and an allowing tag takes precedence over a denying one for the same name.
+ *
+ * <p>These are cached per channel by the {@link CommandClient#getTopicTags(net.dv8tion.jda.api.entities.channel.concrete.TextChannel)
+ * CommandClient}, so a topic is only parsed again after it changes.
+ *
+ * @see Command#isAllowed(TopicTags)
+ */
+public final class TopicTags
+{
+    /**
+     * The tags of an empty topic, which allow everything.
+     */
+    public static final TopicTags EMPTY = new TopicTags(null, CaseInsensitiveIndex.empty(), false);
+
+    private final String topic;
+    private final CaseInsensitiveIndex<Boolean> rules;
+    private final boolean denyAll;
+
+    private TopicTags(String topic, CaseInsensitiveIndex<Boolean> rules, boolean denyAll)
+    {
+        this.topic = topic;
+        this.rules = rules;
+        this.denyAll = denyAll;
+    }
+
+    /**
+     * Parses the topic tags of a channel topic.
+     *
+     * @param  topic
+     *         The channel topic, may be {@code null}
+     *
+     * @return The parsed tags, or {@link #EMPTY} if the topic is empty
+     */
+    public static TopicTags parse(String topic)
+    {
+        if(topic == null || topic.isEmpty())
+            return EMPTY;
+        Map<String, Boolean> rules = new HashMap<>();
+        boolean denyAll = false;
+        int open = -1;
+        for(int i = 0; i < topic.length(); i++)
+        {
+            char c = topic.charAt(i);
+            if(c == '{')
+            {
+                // The innermost brace is used, as "{a{b}" contains the tag "{b}"
+                open = i;
+            }
+            else if(c == '}' && open >= 0)
+            {
+                boolean deny = open + 1 < i && topic.charAt(open + 1) == '-';
+                String name = topic.substring(deny ? open + 2 : open + 1, i).toLowerCase(Locale.ROOT);
+                if(deny && name.equals("all"))
+                    denyAll = true;
+                // An allowing tag wins over a denying one for the same name
+                rules.merge(name, !deny, Boolean::logicalOr);
+                open = -1;
+            }
+        }
+        return new TopicTags(topic, CaseInsensitiveIndex.of(rules), denyAll);
+    }
+
+    /**
+     * Gets the topic these tags were parsed from.
+     *
+     * @return The topic, or {@code null} for {@link #EMPTY}
+     */
+    public String getTopic()
+    {
+        return topic;
+    }
+
+    /**
+     * Checks if a command with the provided name and category is allowed by these tags.
+     *
+     * @param  name
+     *         The name of the command
+     * @param  category
+     *         The name of the command's category, may be {@code null}
+     *
+     * @return {@code true} if the command is allowed
+     */
+    public boolean isAllowed(String name, String category)
+    {
+        Boolean rule = rules.get(name);
+        if(rule != null)
+            return rule;
+        if(category != null)
+        {
+            rule = rules.get(category);
+            if(rule != null)
+                return rule;
+        }
+        return !denyAll;
+    }
+}
@@ -122,13 +122,6 @@ public class UserContextMenuEvent extends UserContextInteractionEvent
      */
     public boolean isOwner()
     {
-        if(getUser().getId().equals(this.getClient().getOwnerId()))
-            return true;
-        if(this.getClient().getCoOwnerIds()==null)
-            return false;
-        for(String id : this.getClient().getCoOwnerIds())
-            if(id.equals(getUser().getId()))
-                return true;
-        return false;
+        return this.getClient().isOwner(getUser().getIdLong());
     }
 }
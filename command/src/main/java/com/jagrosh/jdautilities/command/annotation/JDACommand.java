@@ -98,6 +98,14 @@ public @interface JDACommand
      */
     String requiredRole() default "";
 
+    /**
+     * The IDs of roles required to use this command.
+     * <br>A member with any of these roles, or with the {@link #requiredRole() required role}, may use the command.
+     *
+     * @return The IDs of roles required to use this command.
+     */
+    long[] requiredRoleIds() default {};
+
     /**
      * Whether or not the command is owner only.
      * <br>Default {@code true}.
@@ -113,6 +121,14 @@ public @interface JDACommand
      */
     String arguments() default "";
 
+    /**
+     * The declaration of the {@link com.jagrosh.jdautilities.command.ArgumentSchema ArgumentSchema}
+     * the arguments of the command are parsed with, such as {@code "<target:user> [reason:string...]"}.
+     *
+     * @return The argument schema declaration for the command.
+     */
+    String argumentSchema() default "";
+
     /**
      * The {@link JDACommand.Cooldown JDACommand.Cooldown} for the command.
      *
@@ -124,6 +140,25 @@ public @interface JDACommand
      */
     Cooldown cooldown() default @Cooldown(0);
 
+    /**
+     * The name of the execution group the command is run in.
+     * <br>Groups are registered with
+     * {@link com.jagrosh.jdautilities.command.CommandClientBuilder#addExecutionGroup(String, com.jagrosh.jdautilities.command.CommandExecutionStrategy)
+     * CommandClientBuilder#addExecutionGroup(String, CommandExecutionStrategy)}.
+     * <br>Default {@code ""}, meaning the default execution strategy is used.
+     *
+     * @return The name of the execution group for the command.
+     */
+    String executionGroup() default "";
+
+    /**
+     * The {@link JDACommand.RateLimit JDACommand.RateLimit}s for the command,
+     * making up {@link com.jagrosh.jdautilities.command.Interaction#getRateLimits() Command#rateLimits}.
+     *
+     * @return The {@code @RateLimit}s for the command.
+     */
+    RateLimit[] rateLimits() default {};
+
     /**
      * The {@link net.dv8tion.jda.api.Permission Permissions} the bot must have
      * on a guild to use this command.
@@ -236,6 +271,43 @@ public @interface JDACommand
         CooldownScope scope() default CooldownScope.USER;
     }
 
+    /**
+     * A value wrapper for a {@link com.jagrosh.jdautilities.command.RateLimit RateLimit}
+     * in {@link Command#getRateLimits() Command#rateLimits}.
+     *
+     * The default {@link CooldownScope}
+     * is {@link CooldownScope#USER CooldownScope.USER}.
+     *
+     * @see    JDACommand#rateLimits()
+     */
+    @Target(ElementType.TYPE)
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface RateLimit
+    {
+        /**
+         * The number of uses allowed per period.
+         *
+         * @return The number of uses allowed per period.
+         */
+        int permits();
+
+        /**
+         * The period in seconds.
+         *
+         * @return The period in seconds.
+         */
+        int seconds();
+
+        /**
+         * The {@link CooldownScope CooldownScope} the limit applies to.
+         *
+         * <p>By default this is {@link CooldownScope#USER CooldownScope.USER}.
+         *
+         * @return The CooldownScope for this limit.
+         */
+        CooldownScope scope() default CooldownScope.USER;
+    }
+
     /**
      * A helper annotation to assist in location of Category instance.
      *
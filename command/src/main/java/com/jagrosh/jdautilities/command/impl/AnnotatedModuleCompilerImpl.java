@@ -19,6 +19,7 @@ import com.jagrosh.jdautilities.command.AnnotatedModuleCompiler;
 import com.jagrosh.jdautilities.command.Command;
 import com.jagrosh.jdautilities.command.CommandBuilder;
 import com.jagrosh.jdautilities.command.CommandEvent;
+import com.jagrosh.jdautilities.command.RateLimit;
 import com.jagrosh.jdautilities.command.annotation.JDACommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,6 +90,7 @@ public class AnnotatedModuleCompilerImpl implements AnnotatedModuleCompiler
 
         // Arguments
         builder.setArguments(properties.arguments().trim().isEmpty()? null : properties.arguments().trim());
+        builder.setArgumentSchema(properties.argumentSchema());
 
         // Category
         if(!properties.category().location().equals(JDACommand.Category.class))
@@ -115,6 +117,7 @@ public class AnnotatedModuleCompilerImpl implements AnnotatedModuleCompiler
 
         // Required Role
         builder.setRequiredRole(properties.requiredRole().trim().isEmpty()? null : properties.requiredRole().trim());
+        builder.setRequiredRoleIds(properties.requiredRoleIds());
 
         // Owner Command
         builder.setOwnerCommand(properties.ownerCommand());
@@ -125,6 +128,18 @@ public class AnnotatedModuleCompilerImpl implements AnnotatedModuleCompiler
         // Cooldown Scope
         builder.setCooldownScope(properties.cooldown().scope());
 
+        // Execution Group
+        builder.setExecutionGroup(properties.executionGroup().trim().isEmpty()? null : properties.executionGroup().trim());
+
+        // Rate Limits
+        RateLimit[] rateLimits = new RateLimit[properties.rateLimits().length];
+        for(int i = 0; i < rateLimits.length; i++)
+        {
+            JDACommand.RateLimit limit = properties.rateLimits()[i];
+            rateLimits[i] = new RateLimit(limit.permits(), limit.seconds(), limit.scope());
+        }
+        builder.setRateLimits(rateLimits);
+
         // Bot Permissions
         builder.setBotPermissions(properties.botPermissions());
 
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.StatsDestination;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.internal.utils.Checks;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.FormBody;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * The built-in bot list {@link StatsDestination StatsDestination}s, posting the total guild count of the bot
+ * over the HTTP client of JDA.
+ *
+ * @see StatsDestination#carbonitex(String)
+ * @see StatsDestination#discordBotsGG(String)
+ */
+public final class BotListStatsDestination implements StatsDestination
+{
+    private static final Logger LOG = LoggerFactory.getLogger(BotListStatsDestination.class);
+
+    private final String key;
+    private final boolean carbonitex;
+
+    private BotListStatsDestination(String key, boolean carbonitex)
+    {
+        Checks.notEmpty(key, "Key");
+        this.key = key;
+        this.carbonitex = carbonitex;
+    }
+
+    /**
+     * Constructs a destination posting to carbonitex.net.
+     *
+     * @param  key
+     *         The Carbonitex key
+     *
+     * @return The destination
+     */
+    public static BotListStatsDestination carbonitex(String key)
+    {
+        return new BotListStatsDestination(key, true);
+    }
+
+    /**
+     * Constructs a destination posting to discord.bots.gg.
+     *
+     * @param  key
+     *         The Discord Bots API key
+     *
+     * @return The destination
+     */
+    public static BotListStatsDestination discordBotsGG(String key)
+    {
+        return new BotListStatsDestination(key, false);
+    }
+
+    @Override
+    public void send(JDA jda, int guildCount, int shardCount)
+    {
+        if(carbonitex)
+            sendCarbonitex(jda, guildCount, shardCount);
+        else
+            sendDiscordBotsGG(jda, guildCount, shardCount);
+    }
+
+    private void sendCarbonitex(JDA jda, int guildCount, int shardCount)
+    {
+        // The count of every shard is already added together, so it is posted as a single shard
+        FormBody body = new FormBody.Builder()
+                .add("key", key)
+                .add("servercount", Integer.toString(guildCount))
+                .build();
+
+        Request.Builder builder = new Request.Builder()
+                .post(body)
+                .url("https://www.carbonitex.net/discord/data/botdata.php");
+
+        jda.getHttpClient().newCall(builder.build()).enqueue(new Callback()
+        {
+            @Override
+            public void onResponse(Call call, Response response)
+            {
+                LOG.info("Successfully send information to carbonitex.net");
+                response.close();
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e)
+            {
+                LOG.error("Failed to send information to carbonitex.net ", e);
+            }
+        });
+    }
+
+    private void sendDiscordBotsGG(JDA jda, int guildCount, int shardCount)
+    {
+        JSONObject body = new JSONObject().put("guildCount", guildCount);
+        if(shardCount > 1)
+            body.put("shardCount", shardCount);
+
+        Request.Builder builder = new Request.Builder()
+                .post(RequestBody.create(MediaType.parse("application/json"), body.toString()))
+                .url("https://discord.bots.gg/api/v1/bots/" + jda.getSelfUser().getId() + "/stats")
+                .header("Authorization", key)
+                .header("Content-Type", "application/json");
+
+        jda.getHttpClient().newCall(builder.build()).enqueue(new Callback()
+        {
+            @Override
+            public void onResponse(Call call, Response response) throws IOException
+            {
+                if(response.isSuccessful())
+                    LOG.info("Successfully sent information to discord.bots.gg");
+                else
+                    LOG.error("Failed to send information to discord.bots.gg: "+response.body().string());
+                response.close();
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e)
+            {
+                LOG.error("Failed to send information to discord.bots.gg ", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.CooldownKey;
+import com.jagrosh.jdautilities.command.CooldownStore;
+import net.dv8tion.jda.internal.utils.Checks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link CooldownStore CooldownStore} remembering locally which keys another store, usually a
+ * {@link RemoteCooldownStore RemoteCooldownStore}, has reported to be on cooldown.
+ *
+ * <p>A key that is known to be on cooldown is rejected without asking the other store, as no process could
+ * acquire it before the cooldown ends. The other store is only asked about keys that are not known to be on
+ * cooldown, so a user spamming a command costs one round trip per cooldown rather than one per attempt.
+ *
+ * <p>Because cooldowns are only ever extended by acquiring them once they have expired, the local view can at
+ * worst expire slightly earlier than the shared one, in which case the other store is asked again.
+ * Cooldowns shortened or removed with {@link #apply(CooldownKey, long)} on another process are not seen
+ * until the local copy expires.
+ */
+public class CachingCooldownStore implements CooldownStore
+{
+    private final CooldownStore delegate;
+    private final InMemoryCooldownStore local = new InMemoryCooldownStore();
+
+    public CachingCooldownStore(CooldownStore delegate)
+    {
+        Checks.notNull(delegate, "CooldownStore");
+        this.delegate = delegate;
+    }
+
+    @Override
+    public long tryAcquire(CooldownKey key, long nanos)
+    {
+        long remaining = local.getRemaining(key);
+        if(remaining > 0)
+            return remaining;
+        return remember(key, nanos, delegate.tryAcquire(key, nanos));
+    }
+
+    @Override
+    public long getRemaining(CooldownKey key)
+    {
+        long remaining = local.getRemaining(key);
+        if(remaining > 0)
+            return remaining;
+        remaining = delegate.getRemaining(key);
+        if(remaining > 0)
+            local.apply(key, remaining);
+        return remaining;
+    }
+
+    @Override
+    public void apply(CooldownKey key, long nanos)
+    {
+        delegate.apply(key, nanos);
+        local.apply(key, nanos);
+    }
+
+    @Override
+    public CompletableFuture<Long> tryAcquireAsync(CooldownKey key, long nanos)
+    {
+        long remaining = local.getRemaining(key);
+        if(remaining > 0)
+            return CompletableFuture.completedFuture(remaining);
+        return delegate.tryAcquireAsync(key, nanos).thenApply(result -> remember(key, nanos, result));
+    }
+
+    @Override
+    public long[] tryAcquireAll(List<CooldownKey> keys, long[] nanos)
+    {
+        long[] results = new long[keys.size()];
+        List<Integer> indexes = checkLocal(keys, results);
+        if(indexes.isEmpty())
+            return results;
+        // Synchronously, so the other store's own timeout and failure handling applies
+        long[] fetched = delegate.tryAcquireAll(select(keys, indexes), select(nanos, indexes));
+        return merge(keys, nanos, results, indexes, fetched);
+    }
+
+    @Override
+    public CompletableFuture<long[]> tryAcquireAllAsync(List<CooldownKey> keys, long[] nanos)
+    {
+        long[] results = new long[keys.size()];
+        List<Integer> indexes = checkLocal(keys, results);
+        if(indexes.isEmpty())
+            return CompletableFuture.completedFuture(results);
+        return delegate.tryAcquireAllAsync(select(keys, indexes), select(nanos, indexes))
+            .thenApply(fetched -> merge(keys, nanos, results, indexes, fetched));
+    }
+
+    @Override
+    public void expire()
+    {
+        local.expire();
+        delegate.expire();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        delegate.shutdown();
+    }
+
+    // Fills in the keys known to be on cooldown, returning the indexes of the ones that aren't
+    private List<Integer> checkLocal(List<CooldownKey> keys, long[] results)
+    {
+        List<Integer> indexes = new ArrayList<>();
+        for(int i = 0; i < results.length; i++)
+        {
+            results[i] = local.getRemaining(keys.get(i));
+            if(results[i] == 0)
+                indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private static List<CooldownKey> select(List<CooldownKey> keys, List<Integer> indexes)
+    {
+        List<CooldownKey> selected = new ArrayList<>(indexes.size());
+        for(int index : indexes)
+            selected.add(keys.get(index));
+        return selected;
+    }
+
+    private static long[] select(long[] nanos, List<Integer> indexes)
+    {
+        long[] selected = new long[indexes.size()];
+        for(int i = 0; i < selected.length; i++)
+            selected[i] = nanos[indexes.get(i)];
+        return selected;
+    }
+
+    private long[] merge(List<CooldownKey> keys, long[] nanos, long[] results, List<Integer> indexes, long[] fetched)
+    {
+        for(int i = 0; i < fetched.length; i++)
+        {
+            int index = indexes.get(i);
+            results[index] = remember(keys.get(index), nanos[index], fetched[i]);
+        }
+        return results;
+    }
+
+    private long remember(CooldownKey key, long nanos, long result)
+    {
+        // Acquired here, or already held elsewhere, either way it's on cooldown for everyone
+        long cooldown = result > 0 ? result : nanos;
+        if(cooldown > 0)
+            local.apply(key, cooldown);
+        return result;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.GuildSettingsManager;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.internal.utils.Checks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link GuildSettingsManager GuildSettingsManager} caching the settings provided by another manager,
+ * usually one backed by a database.
+ *
+ * <p>Settings are cached for a fixed time after they were loaded, and the least recently used are evicted once
+ * the cache is full. Guilds without settings are cached as well, so they don't hit the other manager either.
+ *
+ * <p>Misses are loaded on an {@link ExecutorService ExecutorService} by {@link #getSettingsAsync(Guild)}, so the
+ * {@link com.jagrosh.jdautilities.command.CommandClient CommandClient} never blocks a gateway thread on them.
+ * Concurrent misses for the same Guild share a single load.
+ * <br>Guilds are also preloaded as they become ready, in batches through {@link #getSettings(Collection)}, once
+ * the other manager has been {@linkplain #init() initialized}.
+ *
+ * <p>Changes made to settings through the other manager are not seen until they expire, unless the Guild is
+ * {@linkplain #invalidate(long) invalidated}.
+ *
+ * @param  <T>
+ *         The specific type of the settings object.
+ */
+public class CachingGuildSettingsManager<T> implements GuildSettingsManager<T>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CachingGuildSettingsManager.class);
+    private static final int PRELOAD_BATCH_SIZE = 100;
+
+    private final GuildSettingsManager<T> delegate;
+    private final long expireAfterNanos;
+    private final ExecutorService executor;
+    private final Map<Long, Entry<T>> cache;
+    private final Map<Long, CompletableFuture<T>> loading = new ConcurrentHashMap<>();
+    private final Queue<Guild> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean preloading = new AtomicBoolean();
+    // Incremented by every invalidation, so a batch loaded before one is never stored after it
+    private final AtomicLong generation = new AtomicLong();
+    private volatile boolean initialized;
+
+    public CachingGuildSettingsManager(GuildSettingsManager<T> delegate, int maximumSize, long expireAfter, TimeUnit unit)
+    {
+        this(delegate, maximumSize, expireAfter, unit, Executors.newFixedThreadPool(2, threadFactory()));
+    }
+
+    public CachingGuildSettingsManager(GuildSettingsManager<T> delegate, int maximumSize, long expireAfter, TimeUnit unit, ExecutorService executor)
+    {
+        Checks.notNull(delegate, "GuildSettingsManager");
+        Checks.positive(maximumSize, "Maximum size");
+        Checks.positive(expireAfter, "Expiry");
+        Checks.notNull(unit, "TimeUnit");
+        Checks.notNull(executor, "ExecutorService");
+        this.delegate = delegate;
+        this.expireAfterNanos = unit.toNanos(expireAfter);
+        this.executor = executor;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<Long, Entry<T>>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry<T>> eldest)
+            {
+                return size() > maximumSize;
+            }
+        });
+    }
+
+    @Override
+    public T getSettings(Guild guild)
+    {
+        Entry<T> entry = getEntry(guild.getIdLong());
+        if(entry != null)
+            return entry.value;
+        try
+        {
+            return load(guild, false).join();
+        }
+        catch(CompletionException ex)
+        {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw ex;
+        }
+    }
+
+    @Override
+    public CompletableFuture<T> getSettingsAsync(Guild guild)
+    {
+        Entry<T> entry = getEntry(guild.getIdLong());
+        if(entry != null)
+            return CompletableFuture.completedFuture(entry.value);
+        return load(guild, true);
+    }
+
+    @Override
+    public Map<Long, T> getSettings(Collection<Guild> guilds)
+    {
+        Map<Long, T> settings = new HashMap<>();
+        List<Guild> misses = new ArrayList<>();
+        for(Guild guild : guilds)
+        {
+            Entry<T> entry = getEntry(guild.getIdLong());
+            if(entry == null)
+                misses.add(guild);
+            else if(entry.value != null)
+                settings.put(guild.getIdLong(), entry.value);
+        }
+        if(!misses.isEmpty())
+        {
+            Map<Long, T> loaded = loadAll(misses);
+            for(Guild guild : misses)
+            {
+                T value = loaded.get(guild.getIdLong());
+                if(value != null)
+                    settings.put(guild.getIdLong(), value);
+            }
+        }
+        return settings;
+    }
+
+    @Override
+    public void preload(Guild guild)
+    {
+        pending.add(guild);
+        if(initialized)
+            schedulePreload();
+    }
+
+    @Override
+    public void init()
+    {
+        delegate.init();
+        initialized = true;
+        // Guilds are ready before the ReadyEvent the other manager is initialized on
+        schedulePreload();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        delegate.shutdown();
+        executor.shutdown();
+    }
+
+    /**
+     * Removes the cached settings of a Guild, so they are loaded again on their next use.
+     *
+     * @param  guildId
+     *         The ID of the Guild
+     */
+    public void invalidate(long guildId)
+    {
+        generation.incrementAndGet();
+        loading.remove(guildId);
+        cache.remove(guildId);
+    }
+
+    /**
+     * Removes the cached settings of every Guild.
+     */
+    public void invalidateAll()
+    {
+        generation.incrementAndGet();
+        loading.clear();
+        cache.clear();
+    }
+
+    private Entry<T> getEntry(long guildId)
+    {
+        Entry<T> entry = cache.get(guildId);
+        if(entry == null || entry.expiresAt - System.nanoTime() > 0)
+            return entry;
+        cache.remove(guildId, entry);
+        return null;
+    }
+
+    private void put(long guildId, T value)
+    {
+        cache.put(guildId, new Entry<>(value, System.nanoTime() + expireAfterNanos));
+    }
+
+    private CompletableFuture<T> load(Guild guild, boolean async)
+    {
+        long guildId = guild.getIdLong();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = loading.putIfAbsent(guildId, future);
+        if(existing != null)
+            return existing;
+        Runnable task = () -> {
+            try
+            {
+                T value = delegate.getSettings(guild);
+                // Only stored if the Guild wasn't invalidated in the meantime
+                if(loading.remove(guildId, future))
+                    put(guildId, value);
+                future.complete(value);
+            }
+            catch(Throwable t)
+            {
+                loading.remove(guildId, future);
+                future.completeExceptionally(t);
+            }
+        };
+        if(!async)
+        {
+            task.run();
+            return future;
+        }
+        try
+        {
+            executor.execute(task);
+        }
+        catch(RejectedExecutionException ex)
+        {
+            // Shutting down, so load on the calling thread instead
+            task.run();
+        }
+        return future;
+    }
+
+    private Map<Long, T> loadAll(List<Guild> guilds)
+    {
+        long current = generation.get();
+        Map<Long, T> loaded = delegate.getSettings(guilds);
+        if(generation.get() == current)
+        {
+            // Guilds missing from the result have no settings, which is cached as well
+            for(Guild guild : guilds)
+                put(guild.getIdLong(), loaded.get(guild.getIdLong()));
+        }
+        return loaded;
+    }
+
+    private void schedulePreload()
+    {
+        if(pending.isEmpty() || !preloading.compareAndSet(false, true))
+            return;
+        try
+        {
+            executor.execute(this::preloadPending);
+        }
+        catch(RejectedExecutionException ex)
+        {
+            preloading.set(false);
+        }
+    }
+
+    private void preloadPending()
+    {
+        try
+        {
+            while(true)
+            {
+                List<Guild> batch = new ArrayList<>();
+                Guild guild;
+                while(batch.size() < PRELOAD_BATCH_SIZE && (guild = pending.poll()) != null)
+                {
+                    if(getEntry(guild.getIdLong()) == null)
+                        batch.add(guild);
+                }
+                if(batch.isEmpty())
+                    break;
+                loadAll(batch);
+            }
+        }
+        catch(Exception ex)
+        {
+            LOG.error("Failed to preload guild settings", ex);
+        }
+        finally
+        {
+            preloading.set(false);
+        }
+        // Guilds that became ready while finishing up are preloaded by another run
+        schedulePreload();
+    }
+
+    private static ThreadFactory threadFactory()
+    {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "settings-loader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Entry<T>
+    {
+        private final T value;
+        private final long expiresAt;
+
+        private Entry(T value, long expiresAt)
+        {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import java.util.Map;
+
+/**
+ * An immutable, open-addressed lookup table keyed by case-insensitive Strings.
+ *
+ * <p>Unlike a {@link java.util.HashMap HashMap}, lookups can be done against a region of any
+ * {@link java.lang.CharSequence CharSequence}, such as the command name inside a message's raw content,
+ * hashing and comparing the characters in place. This means resolving a name doesn't require creating
+ * a substring or a lower case copy of it first.
+ *
+ * <p>Keys are folded using {@link Character#toLowerCase(char)}.
+ * <br><b>This is an internal class, and is not intended to be used outside of JDA-Chewtils.</b>
+ *
+ * @param  <V>
+ *         The type of values held by the index
+ */
+public final class CaseInsensitiveIndex<V>
+{
+    private static final CaseInsensitiveIndex<?> EMPTY = new CaseInsensitiveIndex<>(new String[1], new Object[1]);
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    private CaseInsensitiveIndex(String[] keys, Object[] values)
+    {
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+    }
+
+    /**
+     * Gets an empty index.
+     *
+     * @param  <V>
+     *         The type of values held by the index
+     *
+     * @return An empty index
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> CaseInsensitiveIndex<V> empty()
+    {
+        return (CaseInsensitiveIndex<V>) EMPTY;
+    }
+
+    /**
+     * Builds an index from the entries of the provided map.
+     * <br>If two keys are equal when ignoring case, the value of the last one iterated is kept.
+     *
+     * @param  <V>
+     *         The type of values held by the index
+     * @param  map
+     *         The entries to index
+     *
+     * @return The built index
+     */
+    public static <V> CaseInsensitiveIndex<V> of(Map<String, ? extends V> map)
+    {
+        if(map.isEmpty())
+            return empty();
+        // Keep the load factor at or under 0.5 so probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(2, map.size()) * 4 - 1);
+        String[] keys = new String[capacity];
+        Object[] values = new Object[capacity];
+        int mask = capacity - 1;
+        for(Map.Entry<String, ? extends V> entry : map.entrySet())
+        {
+            String key = entry.getKey();
+            int slot = hash(key, 0, key.length()) & mask;
+            while(keys[slot] != null && !regionEquals(keys[slot], key, 0, key.length()))
+                slot = (slot + 1) & mask;
+            keys[slot] = fold(key);
+            values[slot] = entry.getValue();
+        }
+        return new CaseInsensitiveIndex<>(keys, values);
+    }
+
+    /**
+     * Gets the value indexed under the provided key, ignoring case.
+     *
+     * @param  key
+     *         The key
+     *
+     * @return The value, or {@code null} if there isn't one
+     */
+    public V get(CharSequence key)
+    {
+        return get(key, 0, key.length());
+    }
+
+    /**
+     * Gets the value indexed under the region {@code [start, end)} of the provided characters, ignoring case.
+     *
+     * @param  source
+     *         The characters containing the key
+     * @param  start
+     *         The index the key starts at, inclusive
+     * @param  end
+     *         The index the key ends at, exclusive
+     *
+     * @return The value, or {@code null} if there isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public V get(CharSequence source, int start, int end)
+    {
+        int slot = hash(source, start, end) & mask;
+        String key;
+        while((key = keys[slot]) != null)
+        {
+            if(regionEquals(key, source, start, end))
+                return (V) values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static int hash(CharSequence source, int start, int end)
+    {
+        int h = 0;
+        for(int i = start; i < end; i++)
+            h = 31 * h + Character.toLowerCase(source.charAt(i));
+        // Spread the high bits down, as the table is indexed by the low bits only
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionEquals(String folded, CharSequence source, int start, int end)
+    {
+        if(folded.length() != end - start)
+            return false;
+        for(int i = 0; i < folded.length(); i++)
+        {
+            if(folded.charAt(i) != Character.toLowerCase(source.charAt(start + i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static String fold(String key)
+    {
+        char[] chars = new char[key.length()];
+        for(int i = 0; i < chars.length; i++)
+            chars[i] = Character.toLowerCase(key.charAt(i));
+        return new String(chars);
+    }
+}
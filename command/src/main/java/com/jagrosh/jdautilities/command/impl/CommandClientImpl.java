@@ -20,17 +20,23 @@ import com.jagrosh.jdautilities.command.Command;
 import com.jagrosh.jdautilities.command.Command.Category;
 import com.jagrosh.jdautilities.command.CommandClient;
 import com.jagrosh.jdautilities.command.CommandEvent;
+import com.jagrosh.jdautilities.command.CommandExecutionStrategy;
 import com.jagrosh.jdautilities.command.CommandListener;
+import com.jagrosh.jdautilities.command.CommandMetrics;
 import com.jagrosh.jdautilities.command.ContextMenu;
+import com.jagrosh.jdautilities.command.CooldownKey;
+import com.jagrosh.jdautilities.command.CooldownStore;
 import com.jagrosh.jdautilities.command.GuildSettingsManager;
 import com.jagrosh.jdautilities.command.GuildSettingsProvider;
+import com.jagrosh.jdautilities.command.Interaction;
 import com.jagrosh.jdautilities.command.MessageContextMenu;
 import com.jagrosh.jdautilities.command.MessageContextMenuEvent;
 import com.jagrosh.jdautilities.command.SlashCommand;
 import com.jagrosh.jdautilities.command.SlashCommandEvent;
+import com.jagrosh.jdautilities.command.StatsDestination;
+import com.jagrosh.jdautilities.command.TopicTags;
 import com.jagrosh.jdautilities.command.UserContextMenu;
 import com.jagrosh.jdautilities.command.UserContextMenuEvent;
-import com.jagrosh.jdautilities.commons.utils.FixedSizeCache;
 import com.jagrosh.jdautilities.commons.utils.SafeIdUtil;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.OnlineStatus;
@@ -38,58 +44,78 @@ import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.StandardGuildMessageChannel;
 import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.channel.ChannelDeleteEvent;
+import net.dv8tion.jda.api.events.channel.update.ChannelUpdateTopicEvent;
 import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
+import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
+import net.dv8tion.jda.api.events.guild.member.GenericGuildMemberEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.update.GuildMemberUpdateTimeOutEvent;
+import net.dv8tion.jda.api.events.guild.override.GenericPermissionOverrideEvent;
+import net.dv8tion.jda.api.events.guild.update.GuildUpdateOwnerEvent;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.MessageContextInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEvent;
 import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.events.role.GenericRoleEvent;
+import net.dv8tion.jda.api.events.role.RoleCreateEvent;
+import net.dv8tion.jda.api.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdateNameEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdatePermissionsEvent;
 import net.dv8tion.jda.api.events.session.ReadyEvent;
 import net.dv8tion.jda.api.events.session.ShutdownEvent;
+import net.dv8tion.jda.api.events.user.update.UserUpdateNameEvent;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.utils.TimeUtil;
 import net.dv8tion.jda.internal.utils.Checks;
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.FormBody;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.json.JSONObject;
-import org.json.JSONTokener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.Reader;
+import java.nio.file.Path;
 import java.time.OffsetDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.UnaryOperator;
 
 /**
  * An implementation of {@link com.jagrosh.jdautilities.command.CommandClient CommandClient} to be used by a bot.
@@ -107,35 +133,52 @@ public class CommandClientImpl implements CommandClient, EventListener
 {
     private static final Logger LOG = LoggerFactory.getLogger(CommandClient.class);
     private static final String DEFAULT_PREFIX = "@mention";
+    // The permissions JDA requires to talk in a standard guild message channel
+    private static final long TALK_PERMISSIONS = Permission.getRaw(Permission.VIEW_CHANNEL, Permission.MESSAGE_SEND);
+    // How long the prefixes of a guild are trusted to reject its messages before its settings are looked up again
+    private static final long PREFIX_RECHECK_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // The most messages one bulk delete can remove, and the oldest they may be, less a minute for the request to get there
+    private static final int BULK_DELETE_LIMIT = 100;
+    private static final long BULK_DELETE_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(14) - TimeUnit.MINUTES.toMillis(1);
+    // How long help documents built without the owner wait before the owner is looked up again
+    private static final long CONTACT_RECHECK_NANOS = TimeUnit.MINUTES.toNanos(1);
+    // How many times a failed automatic upsert is retried, as other shards skip it while it is in flight
+    private static final int UPSERT_RETRIES = 3;
+    // How long the first retry of a failed automatic upsert waits, doubling for every following one
+    private static final long UPSERT_RETRY_DELAY_SECONDS = 5;
 
     private final OffsetDateTime start;
     private final Activity activity;
     private final OnlineStatus status;
     private final String ownerId;
     private final String[] coOwnerIds;
+    private final long[] ownerIds;
+    private final SelfPermissionCache selfPermissions = new SelfPermissionCache();
+    private final ConcurrentHashMap<Long, TopicTags> topicTags = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Queue<MessageReceivedEvent>> awaitingSettings = new ConcurrentHashMap<>();
+    // Handles messages that waited on their guild's settings, apart from the executor so guilds don't wait on each other
+    private final ExecutorService awaitingExecutor = Executors.newCachedThreadPool(awaitingThreadFactory());
+    private volatile HelpDocuments helpDocuments;
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<String, long[]>> roleIds = new ConcurrentHashMap<>();
     private final String prefix;
     private final String altprefix;
     private final String[] prefixes;
+    private final PrefixTrie prefixTrie;
+    private final boolean usesMentionPrefix;
+    private final Map<Long, GuildPrefixes> guildPrefixes;
     private final Function<MessageReceivedEvent, String> prefixFunction;
     private final Function<MessageReceivedEvent, Boolean> commandPreProcessFunction;
     private final BiFunction<MessageReceivedEvent, Command, Boolean> commandPreProcessBiFunction;
     private final String serverInvite;
-    private final HashMap<String, Integer> commandIndex;
-    private final HashMap<String, Integer> slashCommandIndex;
-    private final ArrayList<Command> commands;
-    private final ArrayList<SlashCommand> slashCommands;
-    private final ArrayList<String> slashCommandIds;
-    private final ArrayList<ContextMenu> contextMenus;
-    private final HashMap<String, Integer> contextMenuIndex;
+    private final AtomicReference<CommandRegistry> registry;
     private final String forcedGuildId;
     private final boolean manualUpsert;
     private final String success;
     private final String warning;
     private final String error;
-    private final String botsKey, carbonKey;
-    private final HashMap<String,OffsetDateTime> cooldowns;
-    private final HashMap<String,Integer> uses;
-    private final FixedSizeCache<Long, Set<Message>> linkMap;
+    private final CooldownStore cooldowns;
+    private final CommandMetrics metrics;
+    private final LinkedMessageIndex linkMap;
     private final boolean useHelp;
     private final boolean shutdownAutomatically;
     private final Consumer<CommandEvent> helpConsumer;
@@ -143,15 +186,24 @@ public class CommandClientImpl implements CommandClient, EventListener
     private final ScheduledExecutorService executor;
     private final AnnotatedModuleCompiler compiler;
     private final GuildSettingsManager<?> manager;
+    private final CommandExecutionStrategy executionStrategy;
+    private final Map<String, CommandExecutionStrategy> executionGroups;
+    private final LaneExecutor lanes;
+    private final StatsReporter stats;
+    private final InteractionSnapshot interactionSnapshot;
+    private final boolean targetedInteractionUpdates;
 
     private String textPrefix;
     private CommandListener listener = null;
-    private int totalGuilds;
 
     public CommandClientImpl(String ownerId, String[] coOwnerIds, String prefix, String altprefix, String[] prefixes, Function<MessageReceivedEvent, String> prefixFunction, Function<MessageReceivedEvent, Boolean> commandPreProcessFunction, BiFunction<MessageReceivedEvent, Command, Boolean> commandPreProcessBiFunction, Activity activity, OnlineStatus status, String serverInvite,
                              String success, String warning, String error, String carbonKey, String botsKey, ArrayList<Command> commands, ArrayList<SlashCommand> slashCommands, ArrayList<ContextMenu> contextMenus, String forcedGuildId, boolean manualUpsert,
                              boolean useHelp, boolean shutdownAutomatically, Consumer<CommandEvent> helpConsumer, String helpWord, ScheduledExecutorService executor,
-                             int linkedCacheSize, AnnotatedModuleCompiler compiler, GuildSettingsManager<?> manager)
+                             int linkedCacheSize, AnnotatedModuleCompiler compiler, GuildSettingsManager<?> manager,
+                             CommandExecutionStrategy executionStrategy, Map<String, CommandExecutionStrategy> executionGroups,
+                             int executionLanes, CooldownStore cooldownStore,
+                             List<StatsDestination> statsDestinations, long statsReportWindow,
+                             Path interactionSnapshot, boolean targetedInteractionUpdates)
     {
         Checks.check(ownerId != null, "Owner ID was set null or not set! Please provide an User ID to register as the owner!");
 
@@ -171,6 +223,7 @@ public class CommandClientImpl implements CommandClient, EventListener
 
         this.ownerId = ownerId;
         this.coOwnerIds = coOwnerIds;
+        this.ownerIds = compileOwnerIds(ownerId, coOwnerIds);
         this.prefix = prefix==null || prefix.isEmpty() ? DEFAULT_PREFIX : prefix;
         this.altprefix = altprefix==null || altprefix.isEmpty() ? null : altprefix;
 
@@ -179,6 +232,18 @@ public class CommandClientImpl implements CommandClient, EventListener
             Arrays.sort(this.prefixes, Comparator.reverseOrder());
         }
 
+        // Compile every textual prefix once, the @mention prefix is matched separately
+        List<String> textPrefixes = new ArrayList<>();
+        if(!this.prefix.equals(DEFAULT_PREFIX))
+            textPrefixes.add(this.prefix);
+        if(this.altprefix != null && !this.altprefix.equals(DEFAULT_PREFIX))
+            textPrefixes.add(this.altprefix);
+        if(this.prefixes != null)
+            textPrefixes.addAll(Arrays.asList(this.prefixes));
+        this.prefixTrie = PrefixTrie.compile(textPrefixes);
+        this.usesMentionPrefix = this.prefix.equals(DEFAULT_PREFIX) || DEFAULT_PREFIX.equals(this.altprefix);
+        this.guildPrefixes = new ConcurrentHashMap<>();
+
         this.prefixFunction = prefixFunction;
         this.commandPreProcessFunction = commandPreProcessFunction;
         this.commandPreProcessBiFunction = commandPreProcessBiFunction;
@@ -189,62 +254,41 @@ public class CommandClientImpl implements CommandClient, EventListener
         this.success = success==null ? "": success;
         this.warning = warning==null ? "": warning;
         this.error = error==null ? "": error;
-        this.carbonKey = carbonKey;
-        this.botsKey = botsKey;
-        this.commandIndex = new HashMap<>();
-        this.slashCommandIndex = new HashMap<>();
-        this.commands = new ArrayList<>();
-        this.slashCommands = new ArrayList<>();
-        this.slashCommandIds = new ArrayList<>();
-        this.contextMenus = new ArrayList<>();
-        this.contextMenuIndex = new HashMap<>();
+        this.registry = new AtomicReference<>(CommandRegistry.EMPTY);
         this.forcedGuildId = forcedGuildId;
         this.manualUpsert = manualUpsert;
-        this.cooldowns = new HashMap<>();
-        this.uses = new HashMap<>();
-        this.linkMap = linkedCacheSize>0 ? new FixedSizeCache<>(linkedCacheSize) : null;
+        this.cooldowns = cooldownStore==null ? new InMemoryCooldownStore() : cooldownStore;
+        this.metrics = new CommandMetrics();
+        this.linkMap = linkedCacheSize>0 ? new LinkedMessageIndex(linkedCacheSize) : null;
         this.useHelp = useHelp;
         this.shutdownAutomatically = shutdownAutomatically;
         this.helpWord = helpWord==null ? "help" : helpWord;
         this.executor = executor==null ? Executors.newSingleThreadScheduledExecutor() : executor;
         this.compiler = compiler;
         this.manager = manager;
+        this.executionStrategy = executionStrategy==null ? CommandExecutionStrategy.inline() : executionStrategy;
+        this.executionGroups = executionGroups==null ? new HashMap<>() : executionGroups;
+        this.lanes = executionLanes>0 ? new LaneExecutor(executionLanes) : null;
+        List<StatsDestination> destinations = new ArrayList<>();
+        if(carbonKey != null)
+            destinations.add(StatsDestination.carbonitex(carbonKey));
+        if(botsKey != null)
+            destinations.add(StatsDestination.discordBotsGG(botsKey));
+        if(statsDestinations != null)
+            destinations.addAll(statsDestinations);
+        this.interactionSnapshot = new InteractionSnapshot(interactionSnapshot);
+        this.targetedInteractionUpdates = targetedInteractionUpdates;
+        this.stats = new StatsReporter(this.executor, destinations, Math.max(0, statsReportWindow));
         this.helpConsumer = helpConsumer==null ? (event) -> {
-                StringBuilder builder = new StringBuilder("**"+event.getSelfUser().getName()+"** commands:\n");
-                Category category = null;
-                for(Command command : commands)
-                {
-                    if(!command.isHidden() && (!command.isOwnerCommand() || event.isOwner()))
-                    {
-                        if(!Objects.equals(category, command.getCategory()))
-                        {
-                            category = command.getCategory();
-                            builder.append("\n\n  __").append(category==null ? "No Category" : category.getName()).append("__:\n");
-                        }
-                        builder.append("\n`").append(textPrefix).append(prefix==null?" ":"").append(command.getName())
-                               .append(command.getArguments()==null ? "`" : " "+command.getArguments()+"`")
-                               .append(" - ").append(command.getHelp());
-                    }
-                }
-                User owner = event.getJDA().getUserById(ownerId);
-                if(owner!=null)
-                {
-                    builder.append("\n\nFor additional help, contact **").append(owner.getName()).append("**#").append(owner.getDiscriminator());
-                    if(serverInvite!=null)
-                        builder.append(" or join ").append(serverInvite);
-                }
-                event.replyInDm(builder.toString(), unused ->
+                event.replyInDm(getHelpDocuments(event).get(event.isOwner()), unused ->
                 {
                     if(event.isFromType(ChannelType.TEXT))
                         event.reactSuccess();
                 }, t -> event.replyWarning("Help cannot be sent because you are blocking Direct Messages."));
         } : helpConsumer;
 
-        // Load commands
-        for(Command command : commands)
-        {
-            addCommand(command);
-        }
+        // Load commands, indexing them once rather than once per command
+        updateRegistry(r -> r.withCommands(commands));
 
         // Load slash commands
         for(SlashCommand command : slashCommands)
@@ -274,19 +318,19 @@ public class CommandClientImpl implements CommandClient, EventListener
     @Override
     public List<Command> getCommands()
     {
-        return commands;
+        return registry.get().getCommands();
     }
 
     @Override
     public List<SlashCommand> getSlashCommands()
     {
-        return slashCommands;
+        return registry.get().getSlashCommands();
     }
 
     @Override
     public List<ContextMenu> getContextMenus()
     {
-        return contextMenus;
+        return registry.get().getContextMenus();
     }
 
     @Override
@@ -310,37 +354,43 @@ public class CommandClientImpl implements CommandClient, EventListener
     @Override
     public OffsetDateTime getCooldown(String name)
     {
-        return cooldowns.get(name);
+        long remaining = cooldowns.getRemaining(CooldownKey.of(name));
+        return remaining > 0 ? OffsetDateTime.now().plusNanos(remaining) : null;
     }
 
     @Override
     public int getRemainingCooldown(String name)
     {
-        if(cooldowns.containsKey(name))
-        {
-            int time = (int) Math.ceil(OffsetDateTime.now().until(cooldowns.get(name), ChronoUnit.MILLIS) / 1000D);
-            if(time<=0)
-            {
-                cooldowns.remove(name);
-                return 0;
-            }
-            return time;
-        }
-        return 0;
+        return toSeconds(cooldowns.getRemaining(CooldownKey.of(name)));
     }
 
     @Override
     public void applyCooldown(String name, int seconds)
     {
-        cooldowns.put(name, OffsetDateTime.now().plusSeconds(seconds));
+        cooldowns.apply(CooldownKey.of(name), TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Override
+    public int acquireCooldown(CooldownKey key, int seconds)
+    {
+        return toSeconds(cooldowns.tryAcquire(key, TimeUnit.SECONDS.toNanos(seconds)));
     }
 
     @Override
     public void cleanCooldowns()
     {
-        OffsetDateTime now = OffsetDateTime.now();
-        cooldowns.keySet().stream().filter((str) -> (cooldowns.get(str).isBefore(now)))
-                .collect(Collectors.toList()).forEach(cooldowns::remove);
+        cooldowns.expire();
+    }
+
+    @Override
+    public CooldownStore getCooldownStore()
+    {
+        return cooldowns;
+    }
+
+    private static int toSeconds(long nanos)
+    {
+        return (int) Math.min(Integer.MAX_VALUE, (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
     }
 
     @Override
@@ -352,135 +402,96 @@ public class CommandClientImpl implements CommandClient, EventListener
     @Override
     public int getCommandUses(String name)
     {
-    	return uses.getOrDefault(name, 0);
+    	return (int) Math.min(Integer.MAX_VALUE, metrics.getUses(name));
+    }
+
+    @Override
+    public CommandMetrics getCommandMetrics()
+    {
+        return metrics;
     }
 
     @Override
     public void addCommand(Command command)
     {
-        addCommand(command, commands.size());
+        updateRegistry(r -> r.withCommand(command, r.getCommands().size()));
     }
 
     @Override
     public void addCommand(Command command, int index)
     {
-        if(index>commands.size() || index<0)
-            throw new ArrayIndexOutOfBoundsException("Index specified is invalid: ["+index+"/"+commands.size()+"]");
-        synchronized(commandIndex)
-        {
-            String name = command.getName().toLowerCase(Locale.ROOT);
-            //check for collision
-            if(commandIndex.containsKey(name))
-                throw new IllegalArgumentException("Command added has a name or alias that has already been indexed: \""+name+"\"!");
-            for(String alias : command.getAliases())
-            {
-                if(commandIndex.containsKey(alias.toLowerCase(Locale.ROOT)))
-                    throw new IllegalArgumentException("Command added has a name or alias that has already been indexed: \""+alias+"\"!");
-            }
-            //shift if not append
-            if(index<commands.size())
-            {
-                commandIndex.entrySet().stream().filter(entry -> entry.getValue()>=index).collect(Collectors.toList())
-                    .forEach(entry -> commandIndex.put(entry.getKey(), entry.getValue()+1));
-            }
-            //add
-            commandIndex.put(name, index);
-            for(String alias : command.getAliases())
-                commandIndex.put(alias.toLowerCase(Locale.ROOT), index);
-        }
-        commands.add(index,command);
+        updateRegistry(r -> r.withCommand(command, index));
     }
 
     @Override
     public void addSlashCommand(SlashCommand command)
     {
-        addSlashCommand(command, slashCommands.size());
+        updateRegistry(r -> r.withSlashCommand(command, r.getSlashCommands().size()));
     }
 
     @Override
     public void addSlashCommand(SlashCommand command, int index)
     {
-        if(index>slashCommands.size() || index<0)
-            throw new ArrayIndexOutOfBoundsException("Index specified is invalid: ["+index+"/"+slashCommands.size()+"]");
-        synchronized(slashCommandIndex)
-        {
-            String name = command.getName().toLowerCase(Locale.ROOT);
-            //check for collision
-            if(slashCommandIndex.containsKey(name))
-                throw new IllegalArgumentException("Command added has a name that has already been indexed: \""+name+"\"!");
-            //shift if not append
-            if(index<slashCommands.size())
-            {
-                slashCommandIndex.entrySet().stream().filter(entry -> entry.getValue()>=index).collect(Collectors.toList())
-                    .forEach(entry -> slashCommandIndex.put(entry.getKey(), entry.getValue()+1));
-            }
-            //add
-            slashCommandIndex.put(name, index);
-        }
-        slashCommands.add(index,command);
+        updateRegistry(r -> r.withSlashCommand(command, index));
     }
 
     @Override
     public void addContextMenu(ContextMenu menu)
     {
-        addContextMenu(menu, contextMenus.size());
+        updateRegistry(r -> r.withContextMenu(menu, r.getContextMenus().size()));
     }
 
     @Override
     public void addContextMenu(ContextMenu menu, int index)
     {
-        if(index>contextMenus.size() || index<0)
-            throw new ArrayIndexOutOfBoundsException("Index specified is invalid: ["+index+"/"+contextMenus.size()+"]");
-        synchronized(contextMenuIndex)
-        {
-            String name = menu.getName();
-            //check for collision
-            if(contextMenuIndex.containsKey(name)) {
-                // Compare the existing menu's class to the new menu's class
-                if (contextMenuIndex.get(name).getClass().getName().equals(menu.getClass().getName())) {
-                    throw new IllegalArgumentException("Context Menu added has a name and class that has already been indexed: \"" + name + "\"!");
-                }
-            }
-            //shift if not append
-            if(index<contextMenuIndex.size())
-            {
-                contextMenuIndex.entrySet().stream().filter(entry -> entry.getValue()>=index).collect(Collectors.toList())
-                    .forEach(entry -> contextMenuIndex.put(entry.getKey(), entry.getValue()+1));
-            }
-            //add
-            contextMenuIndex.put(name, index);
-        }
-        contextMenus.add(index,menu);
+        updateRegistry(r -> r.withContextMenu(menu, index));
     }
 
     @Override
     public void removeCommand(String name)
     {
-        synchronized(commandIndex)
-        {
-            if(!commandIndex.containsKey(name.toLowerCase(Locale.ROOT)))
-                throw new IllegalArgumentException("Name provided is not indexed: \"" + name + "\"!");
-            int targetIndex = commandIndex.remove(name.toLowerCase(Locale.ROOT));
-            Command removedCommand = commands.remove(targetIndex);
-            for(String alias : removedCommand.getAliases())
-            {
-                commandIndex.remove(alias.toLowerCase(Locale.ROOT));
-            }
-            commandIndex.entrySet().stream().filter(entry -> entry.getValue()>targetIndex).collect(Collectors.toList())
-                .forEach(entry -> commandIndex.put(entry.getKey(), entry.getValue()-1));
-        }
+        CommandRegistry[] before = new CommandRegistry[1];
+        updateRegistry(r -> {
+            before[0] = r;
+            return r.withoutCommand(name);
+        });
+        // Otherwise a command added again under the name would carry on the old count
+        metrics.remove(before[0].getCommand(name, 0, name.length()));
     }
 
     @Override
     public void addAnnotatedModule(Object module)
     {
-        compiler.compile(module).forEach(this::addCommand);
+        List<Command> compiled = compiler.compile(module);
+        // Publish the whole module at once so it is never seen partially registered
+        updateRegistry(r -> r.withCommands(compiled));
     }
 
     @Override
     public void addAnnotatedModule(Object module, Function<Command, Integer> mapFunction)
     {
-        compiler.compile(module).forEach(command -> addCommand(command, mapFunction.apply(command)));
+        List<Command> compiled = compiler.compile(module);
+        updateRegistry(r -> r.withCommands(compiled, mapFunction::apply));
+    }
+
+    /**
+     * Publishes a new {@link CommandRegistry} derived from the current one.
+     *
+     * <p>Readers never lock; concurrent writers retry against the latest snapshot until their
+     * update is the one published, so the update function may run more than once.
+     *
+     * @param  update
+     *         The function deriving the new registry, throwing if the change is invalid
+     */
+    private void updateRegistry(UnaryOperator<CommandRegistry> update)
+    {
+        CommandRegistry current, next;
+        do
+        {
+            current = registry.get();
+            next = update.apply(current);
+        }
+        while(!registry.compareAndSet(current, next));
     }
 
     @Override
@@ -515,6 +526,46 @@ public class CommandClientImpl implements CommandClient, EventListener
         return ids;
     }
 
+    @Override
+    public boolean isOwner(long userId)
+    {
+        return Arrays.binarySearch(ownerIds, userId) >= 0;
+    }
+
+    @Override
+    public long getSelfPermissions(GuildChannel channel)
+    {
+        return selfPermissions.get(channel.getPermissionContainer());
+    }
+
+    @Override
+    public long getSelfPermissions(Guild guild)
+    {
+        return selfPermissions.get(guild);
+    }
+
+    @Override
+    public TopicTags getTopicTags(TextChannel channel)
+    {
+        String topic = channel.getTopic();
+        TopicTags tags = topicTags.get(channel.getIdLong());
+        // JDA replaces the topic String when it changes, so an identity check is enough to
+        // catch tags that were parsed just before the update event evicted them
+        if(tags == null || tags.getTopic() != topic)
+        {
+            tags = TopicTags.parse(topic);
+            topicTags.put(channel.getIdLong(), tags);
+        }
+        return tags;
+    }
+
+    @Override
+    public long[] getRoleIds(Guild guild, String name)
+    {
+        return roleIds.computeIfAbsent(guild.getIdLong(), id -> new ConcurrentHashMap<>())
+            .computeIfAbsent(name, n -> guild.getRolesByName(n, true).stream().mapToLong(Role::getIdLong).toArray());
+    }
+
     @Override
     public String getSuccess()
     {
@@ -539,6 +590,32 @@ public class CommandClientImpl implements CommandClient, EventListener
         return executor;
     }
 
+    @Override
+    public CommandExecutionStrategy getExecutionStrategy()
+    {
+        return executionStrategy;
+    }
+
+    @Override
+    public CommandExecutionStrategy getExecutionStrategy(String group)
+    {
+        if(group == null)
+            return executionStrategy;
+        return executionGroups.getOrDefault(group, executionStrategy);
+    }
+
+    @Override
+    public int getLaneDepth(long id)
+    {
+        return lanes==null ? 0 : lanes.getDepth(id);
+    }
+
+    @Override
+    public int[] getLaneDepths()
+    {
+        return lanes==null ? new int[0] : lanes.getDepths();
+    }
+
     @Override
     public String getServerInvite()
     {
@@ -577,7 +654,7 @@ public class CommandClientImpl implements CommandClient, EventListener
     @Override
     public int getTotalGuilds()
     {
-        return totalGuilds;
+        return stats.getTotalGuilds();
     }
 
     @Override
@@ -614,6 +691,14 @@ public class CommandClientImpl implements CommandClient, EventListener
         if(manager != null)
             manager.shutdown();
         executor.shutdown();
+        awaitingExecutor.shutdown();
+        cooldowns.shutdown();
+        executionStrategy.shutdown();
+        for(CommandExecutionStrategy strategy : executionGroups.values())
+        {
+            if(strategy != executionStrategy)
+                strategy.shutdown();
+        }
     }
 
     @Override
@@ -640,10 +725,37 @@ public class CommandClientImpl implements CommandClient, EventListener
         {
             if(((GuildJoinEvent)event).getGuild().getSelfMember().getTimeJoined()
                     .plusMinutes(10).isAfter(OffsetDateTime.now()))
-                sendStats(event.getJDA());
+                stats.update(event.getJDA());
         }
         else if(event instanceof GuildLeaveEvent)
-            sendStats(event.getJDA());
+        {
+            guildPrefixes.remove(((GuildLeaveEvent)event).getGuild().getIdLong());
+            roleIds.remove(((GuildLeaveEvent)event).getGuild().getIdLong());
+            selfPermissions.invalidateGuild(((GuildLeaveEvent)event).getGuild().getIdLong());
+            for(TextChannel channel : ((GuildLeaveEvent)event).getGuild().getTextChannels())
+                topicTags.remove(channel.getIdLong());
+            stats.update(event.getJDA());
+        }
+        else if(event instanceof GenericPermissionOverrideEvent)
+            selfPermissions.invalidate(((GenericPermissionOverrideEvent)event).getChannel().getIdLong());
+        else if(event instanceof ChannelDeleteEvent)
+        {
+            selfPermissions.invalidate(((ChannelDeleteEvent)event).getChannel().getIdLong());
+            topicTags.remove(((ChannelDeleteEvent)event).getChannel().getIdLong());
+        }
+        else if(event instanceof ChannelUpdateTopicEvent)
+            topicTags.remove(((ChannelUpdateTopicEvent)event).getChannel().getIdLong());
+        else if(event instanceof UserUpdateNameEvent && ((UserUpdateNameEvent)event).getUser().getId().equals(ownerId))
+            helpDocuments = null;
+        else if(event instanceof GenericRoleEvent)
+            onRoleEvent((GenericRoleEvent)event);
+        else if(event instanceof GuildUpdateOwnerEvent)
+            selfPermissions.invalidateGuild(((GuildUpdateOwnerEvent)event).getGuild().getIdLong());
+        else if(event instanceof GuildMemberRoleAddEvent || event instanceof GuildMemberRoleRemoveEvent
+                || event instanceof GuildMemberUpdateTimeOutEvent)
+            onMemberPermissionsUpdate((GenericGuildMemberEvent)event);
+        else if(event instanceof GuildReadyEvent && manager != null)
+            manager.preload(((GuildReadyEvent)event).getGuild());
         else if(event instanceof ReadyEvent)
             onReady((ReadyEvent)event);
         else if(event instanceof ShutdownEvent)
@@ -653,6 +765,30 @@ public class CommandClientImpl implements CommandClient, EventListener
         }
     }
 
+    private void onRoleEvent(GenericRoleEvent event)
+    {
+        long guildId = event.getGuild().getIdLong();
+        if(event instanceof RoleUpdatePermissionsEvent || event instanceof RoleDeleteEvent)
+            selfPermissions.invalidateGuild(guildId);
+        if(event instanceof RoleCreateEvent || event instanceof RoleUpdateNameEvent || event instanceof RoleDeleteEvent)
+            roleIds.remove(guildId);
+    }
+
+    private void onMemberPermissionsUpdate(GenericGuildMemberEvent event)
+    {
+        // Only the permissions of the bot itself are cached
+        if(event.getMember().getIdLong() == event.getJDA().getSelfUser().getIdLong())
+            selfPermissions.invalidateGuild(event.getGuild().getIdLong());
+    }
+
+    private boolean canTalk(MessageReceivedEvent event)
+    {
+        // Threads have further requirements to talk in, such as not being archived
+        if(event.getChannel() instanceof StandardGuildMessageChannel)
+            return (getSelfPermissions(event.getGuildChannel()) & TALK_PERMISSIONS) == TALK_PERMISSIONS;
+        return event.getChannel().canTalk();
+    }
+
     private void onReady(ReadyEvent event)
     {
         if(!event.getJDA().getSelfUser().isBot())
@@ -675,10 +811,10 @@ public class CommandClientImpl implements CommandClient, EventListener
         // Upsert slash commands, if not manual
         if (!manualUpsert)
         {
-            upsertInteractions(event.getJDA());
+            upsertInteractions(event.getJDA(), forcedGuildId, true, 0);
         }
 
-        sendStats(event.getJDA());
+        stats.update(event.getJDA());
     }
 
     @Override
@@ -689,46 +825,98 @@ public class CommandClientImpl implements CommandClient, EventListener
 
     @Override
     public void upsertInteractions(JDA jda, String serverId)
+    {
+        upsertInteractions(jda, serverId, false, 0);
+    }
+
+    private void upsertInteractions(JDA jda, String serverId, boolean onlyIfChanged, int attempt)
     {
         // Get all commands
         List<CommandData> data = new ArrayList<>();
         List<SlashCommand> slashCommands = getSlashCommands();
-        Map<String, SlashCommand> slashCommandMap = new HashMap<>();
         List<ContextMenu> contextMenus = getContextMenus();
-        Map<String, ContextMenu> contextMenuMap = new HashMap<>();
 
         // Build the command and privilege data
         for (SlashCommand command : slashCommands)
-        {
             data.add(command.buildCommandData());
-            slashCommandMap.put(command.getName(), command);
-        }
 
-        for (ContextMenu menu : contextMenus) {
+        for (ContextMenu menu : contextMenus)
             data.add(menu.buildCommandData());
-            contextMenuMap.put(menu.getName(), menu);
-        }
 
-        // Upsert the commands
+        Guild server = null;
         if (serverId != null)
         {
-            // Attempt to retrieve the provided guild
-            Guild server = jda.getGuildById(serverId);
+            // Attempt to retrieve the provided guild, which may be on another shard
+            server = jda.getShardManager() != null ? jda.getShardManager().getGuildById(serverId) : jda.getGuildById(serverId);
             if (server == null)
             {
                 LOG.error("Specified forced guild is null! Slash Commands will NOT be added! Is the bot added?");
                 return;
             }
-            // Upsert the commands + their privileges
-            server.updateCommands().addCommands(data)
-                .queue(
-                    priv -> LOG.debug("Successfully added " + commands.size() + " slash commands and " + contextMenus.size() + " menus to server " + server.getName()),
-                    error -> LOG.error("Could not upsert commands! Does the bot have the applications.commands scope?" + error)
-                );
+        }
+
+        // Every shard shares the same global and guild commands, so only upsert what changed since the last upsert
+        String scope = serverId == null ? InteractionSnapshot.GLOBAL : server.getId();
+        InteractionSnapshot.Entry entry = InteractionSnapshot.Entry.of(data);
+        InteractionSnapshot.Entry previous = interactionSnapshot.begin(scope, entry);
+        if (previous == null)
+        {
+            if (onlyIfChanged)
+            {
+                LOG.debug("Interactions are unchanged since the last upsert, skipping it");
+                return;
+            }
+            // An explicit upsert always overwrites everything, in case commands were changed elsewhere
+            previous = entry;
+        }
+
+        RestAction<?> action;
+        String description;
+        if (targetedInteractionUpdates && previous != entry && previous != InteractionSnapshot.Entry.EMPTY && !entry.removedSince(previous))
+        {
+            // Commands with the same type and name are overwritten by an upsert, leaving every other command alone
+            List<RestAction<net.dv8tion.jda.api.interactions.commands.Command>> upserts = new ArrayList<>();
+            for (CommandData changed : entry.changedSince(previous, data))
+                upserts.add(server != null ? server.upsertCommand(changed) : jda.upsertCommand(changed));
+            if (upserts.isEmpty())
+            {
+                interactionSnapshot.complete(scope, entry);
+                return;
+            }
+            action = RestAction.allOf(upserts);
+            description = upserts.size() + " changed interactions";
         }
         else
-            jda.updateCommands().addCommands(data)
-                .queue(commands -> LOG.debug("Successfully added " + commands.size() + " slash commands!"));
+        {
+            action = server != null ? server.updateCommands().addCommands(data) : jda.updateCommands().addCommands(data);
+            description = slashCommands.size() + " slash commands and " + contextMenus.size() + " menus";
+        }
+
+        String target = server != null ? "server " + server.getName() : "globally";
+        InteractionSnapshot.Entry replaced = previous;
+        action.queue(
+            success -> {
+                interactionSnapshot.complete(scope, entry);
+                LOG.debug("Successfully added " + description + " " + target);
+            },
+            error -> {
+                interactionSnapshot.fail(scope, entry, replaced);
+                LOG.error("Could not upsert commands! Does the bot have the applications.commands scope?" + error);
+                // Shards that became ready meanwhile skipped this upsert, so nothing else would retry it
+                if (onlyIfChanged && attempt < UPSERT_RETRIES)
+                    retryUpsert(jda, serverId, attempt + 1);
+            }
+        );
+    }
+
+    private void retryUpsert(JDA jda, String serverId, int attempt)
+    {
+        try
+        {
+            executor.schedule(() -> upsertInteractions(jda, serverId, true, attempt),
+                UPSERT_RETRY_DELAY_SECONDS << (attempt - 1), TimeUnit.SECONDS);
+        }
+        catch (RejectedExecutionException ignored) {}
     }
 
     private void onMessageReceived(MessageReceivedEvent event)
@@ -737,13 +925,117 @@ public class CommandClientImpl implements CommandClient, EventListener
         if(event.getAuthor().isBot())
             return;
 
-        final MessageParts parts = getParts(event);
+        // Most messages are chatter, which can be rejected from their first character alone
+        if(prefixFunction == null)
+        {
+            boolean rejected = !mayStartWithPrefix(event);
+            metrics.recordPrefilter(rejected);
+            if(rejected)
+            {
+                if(listener != null)
+                    listener.onNonCommandMessage(event);
+                return;
+            }
+        }
+
+        if(manager == null || !event.isFromGuild())
+        {
+            handleMessage(event, null);
+            return;
+        }
+
+        // Don't block the gateway thread on loading guild settings, handle the message once they are loaded.
+        // Messages from a guild wait behind any of its messages still waiting, so they are handled in order.
+        long guildId = event.getGuild().getIdLong();
+        CompletableFuture<?> settings = manager.getSettingsAsync(event.getGuild());
+        boolean[] first = new boolean[1];
+        Queue<MessageReceivedEvent> waiting = awaitingSettings.compute(guildId, (id, queue) -> {
+            if(queue == null)
+            {
+                if(settings.isDone())
+                    return null;
+                queue = new ArrayDeque<>();
+                first[0] = true;
+            }
+            queue.add(event);
+            return queue;
+        });
+        if(waiting == null)
+            handleMessage(event, settingsOf(settings));
+        else if(first[0])
+        {
+            settings.whenComplete((loaded, error) -> {
+                try
+                {
+                    // Not on the thread that loaded the settings, which belongs to the manager
+                    awaitingExecutor.execute(() -> handleAwaiting(guildId, settingsOf(settings)));
+                }
+                catch(RejectedExecutionException e)
+                {
+                    awaitingSettings.remove(guildId);
+                }
+            });
+        }
+    }
+
+    private void handleAwaiting(long guildId, Object loaded)
+    {
+        // The queue is only removed once empty, so messages arriving meanwhile are added to it instead of overtaking it
+        while(true)
+        {
+            MessageReceivedEvent[] next = new MessageReceivedEvent[1];
+            awaitingSettings.computeIfPresent(guildId, (id, queue) -> {
+                next[0] = queue.poll();
+                return next[0] == null ? null : queue;
+            });
+            if(next[0] == null)
+                return;
+            try
+            {
+                // Settings may have changed since they were loaded, so use the current ones when they are at hand
+                CompletableFuture<?> settings = manager.getSettingsAsync(next[0].getGuild());
+                handleMessage(next[0], settings.isDone() ? settingsOf(settings) : loaded);
+            }
+            catch(Throwable t)
+            {
+                // Keep going, or every later message from the guild would wait forever
+                LOG.error("Failed to handle a message", t);
+            }
+        }
+    }
+
+    private static ThreadFactory awaitingThreadFactory()
+    {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "CommandClient-Settings-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private Object settingsOf(CompletableFuture<?> settings)
+    {
+        try
+        {
+            return settings.getNow(null);
+        }
+        catch(CompletionException | CancellationException e)
+        {
+            LOG.error("Failed to load guild settings", e.getCause() == null ? e : e.getCause());
+            return null;
+        }
+    }
+
+    private void handleMessage(MessageReceivedEvent event, Object settings)
+    {
+        final MessageParts parts = getParts(event, settings);
 
         if(parts!=null) //starts with valid prefix
         {
-            if(useHelp && parts.command.equalsIgnoreCase(helpWord))
+            if(useHelp && parts.isCommand(helpWord))
             {
-                CommandEvent cevent = new CommandEvent(event, parts.prefixUsed, parts.args, this);
+                CommandEvent cevent = new CommandEvent(event, parts.prefixLength, parts.argsStart, this);
                 if(listener!=null)
                     listener.onCommand(cevent, null);
                 helpConsumer.accept(cevent); // Fire help consumer
@@ -751,46 +1043,40 @@ public class CommandClientImpl implements CommandClient, EventListener
                     listener.onCompletedCommand(cevent, null);
                 return; // Help Consumer is done
             }
-            else if(event.isFromType(ChannelType.PRIVATE) || event.getChannel().canTalk())
+            else if(event.isFromType(ChannelType.PRIVATE) || canTalk(event))
             {
-                String name = parts.command;
-                String args = parts.args;
-                final Command command; // this will be null if it's not a command
-                synchronized(commandIndex)
-                {
-                    int i = commandIndex.getOrDefault(name.toLowerCase(Locale.ROOT), -1);
-                    command = i != -1? commands.get(i) : null;
-                }
+                // this will be null if it's not a command
+                final Command command = registry.get().getCommand(parts.rawContent, parts.prefixLength, parts.commandEnd);
 
                 if(command != null)
                 {
-                    CommandEvent cevent = new CommandEvent(event, parts.prefixUsed, args, this);
+                    CommandEvent cevent = new CommandEvent(event, parts.prefixLength, parts.argsStart, this);
 
                     if(listener != null)
                         listener.onCommand(cevent, command);
-                    uses.put(command.getName(), uses.getOrDefault(command.getName(), 0) + 1);
-                    if (commandPreProcessFunction != null || commandPreProcessBiFunction != null)
-                    {
-                        // Apply both pre-process functions
-                        if (commandPreProcessFunction != null && commandPreProcessFunction.apply(event))
+                    metrics.recordUse(command);
+                    execute(event.isFromGuild() ? event.getGuild().getIdLong() : event.getChannel().getIdLong(), command, () -> {
+                        if (commandPreProcessFunction != null || commandPreProcessBiFunction != null)
                         {
-                            command.run(cevent);
-                            return;
+                            // Apply both pre-process functions
+                            if (commandPreProcessFunction != null && commandPreProcessFunction.apply(event))
+                            {
+                                command.run(cevent);
+                                return;
+                            }
+
+                            if (commandPreProcessBiFunction != null && commandPreProcessBiFunction.apply(event, command))
+                            {
+                                command.run(cevent);
+                            }
+
+                            // If we are here, neither function returned true, so we can just return
                         }
-
-                        if (commandPreProcessBiFunction != null && commandPreProcessBiFunction.apply(event, command))
+                        else
                         {
                             command.run(cevent);
-                            return;
                         }
-
-                        // If we are here, neither function returned true, so we can just return
-                        return;
-                    }
-                    else
-                    {
-                        command.run(cevent);
-                    }
+                    });
                     return; // Command is done
                 }
             }
@@ -801,19 +1087,15 @@ public class CommandClientImpl implements CommandClient, EventListener
     }
 
     @Nullable
-    private MessageParts getParts(MessageReceivedEvent event) {
+    private MessageParts getParts(MessageReceivedEvent event, Object settings) {
         String rawContent = event.getMessage().getContentRaw();
 
-        GuildSettingsProvider settings = event.isFromType(ChannelType.TEXT)? provideSettings(event.getGuild()) : null;
-
         // Check for prefix or alternate prefix (@mention cases)
-        if(prefix.equals(DEFAULT_PREFIX) || (altprefix != null && altprefix.equals(DEFAULT_PREFIX))) {
-            if(rawContent.startsWith("<@"+ event.getJDA().getSelfUser().getId()+">") ||
-                    rawContent.startsWith("<@!"+ event.getJDA().getSelfUser().getId()+">")) {
-                // Since we now use substring into makeMessageParts function and a indexOf here, we need to do a +1 to get the good substring
-                // On top of that we need to do another +1 because the default @mention prefix will always be followed by a space
-                // So we need to add 2 characters to get the correct substring
-                final int prefixLength = rawContent.indexOf('>') + 2;
+        if(usesMentionPrefix) {
+            int mentionLength = mentionPrefixLength(rawContent, event.getJDA().getSelfUser().getIdLong());
+            if(mentionLength > 0) {
+                // The default @mention prefix will always be followed by a space, so we skip that too
+                final int prefixLength = Math.min(mentionLength + 1, rawContent.length());
                 return makeMessageParts(rawContent, prefixLength);
             }
         }
@@ -829,43 +1111,107 @@ public class CommandClientImpl implements CommandClient, EventListener
             }
         }
 
-        final String lowerCaseContent = rawContent.toLowerCase(Locale.ROOT);
-        // Check for default prefix
-        if (lowerCaseContent.startsWith(prefix.toLowerCase(Locale.ROOT))) {
-            final int prefixLength = prefix.length();
+        // Check for the default, alternate and additional prefixes, as well as guild specific prefixes
+        PrefixTrie guildPrefixes = event.isFromType(ChannelType.TEXT) ? getGuildPrefixes(event.getGuild(), settings) : null;
+        final int prefixLength = prefixTrie.longestMatch(rawContent, guildPrefixes);
+        if(prefixLength > 0)
             return makeMessageParts(rawContent, prefixLength);
-        }
 
-        // Check for alternate prefix
-        if(altprefix != null && lowerCaseContent.startsWith(altprefix.toLowerCase(Locale.ROOT))) {
-            final int prefixLength = altprefix.length();
-            return makeMessageParts(rawContent, prefixLength);
-        }
+        return null;
+    }
 
-        // Check for prefixes
-        if (prefixes != null) {
-            for (String pre : prefixes) {
-                if (lowerCaseContent.startsWith(pre.toLowerCase(Locale.ROOT))) {
-                    final int prefixLength = pre.length();
-                    return makeMessageParts(rawContent, prefixLength);
-                }
-            }
+    /**
+     * Checks if a message could start with a prefix, from its first character alone.
+     *
+     * <p>The first character is checked against the first characters of the global prefixes, {@code <} for the
+     * @mention prefix, and those of the guild's prefixes if they were looked up recently. If the guild's prefixes
+     * are unknown or were last looked up more than {@link #PREFIX_RECHECK_NANOS} ago, the message is let through,
+     * so its guild settings are looked up again and changed prefixes are picked up.
+     *
+     * @param  event
+     *         The message event
+     *
+     * @return {@code false} if the message can't start with a prefix
+     */
+    private boolean mayStartWithPrefix(MessageReceivedEvent event)
+    {
+        String rawContent = event.getMessage().getContentRaw();
+        if(rawContent.isEmpty())
+            return false;
+        char first = rawContent.charAt(0);
+        if((usesMentionPrefix && first == '<') || prefixTrie.mayStartWith(first))
+            return true;
+        if(!event.isFromType(ChannelType.TEXT))
+            return false;
+        GuildPrefixes cached = guildPrefixes.get(event.getGuild().getIdLong());
+        return cached == null || System.nanoTime() - cached.checkedAt > PREFIX_RECHECK_NANOS || cached.trie.mayStartWith(first);
+    }
+
+    /**
+     * Checks if the content starts with a mention of the bot, either {@code <@id>} or {@code <@!id>}.
+     *
+     * @param  content
+     *         The content to check
+     * @param  selfId
+     *         The ID of the bot
+     *
+     * @return The length of the mention, or {@code -1} if the content doesn't start with one
+     */
+    private static int mentionPrefixLength(String content, long selfId)
+    {
+        if(!content.startsWith("<@"))
+            return -1;
+        int i = content.length() > 2 && content.charAt(2) == '!' ? 3 : 2;
+        long id = 0;
+        int start = i;
+        for(; i < content.length() && i - start < 20; i++)
+        {
+            char c = content.charAt(i);
+            if(c == '>')
+                return i > start && id == selfId ? i + 1 : -1;
+            if(c < '0' || c > '9')
+                return -1;
+            id = id * 10 + (c - '0');
         }
+        return -1;
+    }
 
-        // Check for guild specific prefixes
-        if(settings != null) {
-            Collection<String> prefixes = settings.getPrefixes();
-            if(prefixes != null) {
-                for(String prefix : prefixes) {
-                    if(lowerCaseContent.startsWith(prefix.toLowerCase(Locale.ROOT))) {
-                        final int prefixLength = prefix.length();
-                        return makeMessageParts(rawContent, prefixLength);
-                    }
-                }
+    /**
+     * Gets the compiled prefix trie for a {@link net.dv8tion.jda.api.entities.Guild Guild}'s specific prefixes.
+     *
+     * <p>Tries are cached per guild and only recompiled when the prefixes provided by its
+     * {@link com.jagrosh.jdautilities.command.GuildSettingsProvider GuildSettingsProvider} change.
+     *
+     * @param  guild
+     *         The guild to get prefixes for
+     *
+     * @return The compiled guild prefixes, or {@code null} if the guild has none
+     */
+    @Nullable
+    private PrefixTrie getGuildPrefixes(Guild guild, Object settings)
+    {
+        // The settings were already loaded for the message, so they aren't looked up again
+        Collection<String> prefixes = settings instanceof GuildSettingsProvider ? ((GuildSettingsProvider)settings).getPrefixes() : null;
+        GuildPrefixes cached = guildPrefixes.get(guild.getIdLong());
+        if(prefixes == null || prefixes.isEmpty())
+        {
+            // Guilds without prefixes are remembered too, so their messages can be rejected early
+            if(cached == null || cached.source != null)
+            {
+                cached = new GuildPrefixes(null, 0, PrefixTrie.EMPTY);
+                guildPrefixes.put(guild.getIdLong(), cached);
             }
+            cached.checkedAt = System.nanoTime();
+            return null;
         }
-
-        return null;
+        int hash = prefixes.hashCode();
+        if(cached == null || cached.source != prefixes || cached.hash != hash)
+        {
+            cached = new GuildPrefixes(prefixes, hash, PrefixTrie.compile(prefixes));
+            guildPrefixes.put(guild.getIdLong(), cached);
+        }
+        cached.checkedAt = System.nanoTime();
+        return cached.trie;
     }
 
     /**
@@ -876,6 +1222,8 @@ public class CommandClientImpl implements CommandClient, EventListener
      *     <li>Command name</li>
      *     <li>Arguments</li>
      * </ul>
+     * Only the boundaries of each part are located here, no substrings are created until a command
+     * is actually found.
      *
      * @param rawContent
      *        The raw content of the incoming message
@@ -885,39 +1233,22 @@ public class CommandClientImpl implements CommandClient, EventListener
      */
     @NotNull
     private CommandClientImpl.MessageParts makeMessageParts(String rawContent, int prefixLength) {
-        //Replacement method below
-//        final String[] split = rawContent.substring(prefixLength).trim().split("\\s+", 2);
-
         //What we do is search for the first whitespace after the prefix, this gets us the command name
-        // To then get the arguments, we find the first occurrence of a character other than a whitespace, after the command index, and take the string from that index
-        String cmd = null;
-        for (int i = prefixLength; i < rawContent.length(); i++) {
-            if (Character.isWhitespace(rawContent.charAt(i))) { //If a whitespace assume we found the end of the command name
-                cmd = rawContent.substring(prefixLength, i);
-                break;
-            }
-        }
+        // To then get the arguments, we find the first occurrence of a character other than a whitespace, after the command index
+        final int length = rawContent.length();
+        int commandEnd = prefixLength;
+        while (commandEnd < length && !Character.isWhitespace(rawContent.charAt(commandEnd)))
+            commandEnd++;
 
-        String args = "";
-        if (cmd == null) { //Assume there are no args since there were absolutely no whitespace
-            cmd = rawContent.substring(prefixLength);
-        } else {
-            for (int i = prefixLength + cmd.length(); i < rawContent.length(); i++) {
-                if (!Character.isWhitespace(rawContent.charAt(i))) { //If not a whitespace assume we found the start of the arguments
-                    args = rawContent.substring(i);
-                    break;
-                }
-            }
-        }
+        int argsStart = commandEnd;
+        while (argsStart < length && Character.isWhitespace(rawContent.charAt(argsStart)))
+            argsStart++;
 
         //Just in case something fucked up
-        LOG.trace("Received command named '{}' with args '{}'", cmd, args);
+        if (LOG.isTraceEnabled())
+            LOG.trace("Received command named '{}' with args '{}'", rawContent.substring(prefixLength, commandEnd), rawContent.substring(argsStart));
 
-        return new MessageParts(
-            rawContent.substring(0, prefixLength),
-            cmd,
-            args
-        );
+        return new MessageParts(rawContent, prefixLength, commandEnd, argsStart);
     }
 
     private void onSlashCommand(SlashCommandInteractionEvent event)
@@ -932,8 +1263,8 @@ public class CommandClientImpl implements CommandClient, EventListener
         {
             if(listener != null)
                 listener.onSlashCommand(commandEvent, command);
-            uses.put(command.getName(), uses.getOrDefault(command.getName(), 0) + 1);
-            command.run(commandEvent);
+            metrics.recordUse(command);
+            execute(laneKey(event), command, () -> command.run(commandEvent));
             // Command is done
         }
     }
@@ -951,54 +1282,14 @@ public class CommandClientImpl implements CommandClient, EventListener
 
     private SlashCommand findSlashCommand(String path)
     {
-        String[] parts = path.split(" ");
-
-        final SlashCommand command; // this will be null if it's not a command
-        synchronized(slashCommandIndex)
-        {
-            int i = slashCommandIndex.getOrDefault(parts[0].toLowerCase(Locale.ROOT), -1);
-            command = i != -1? slashCommands.get(i) : null;
-        }
-
-        if (command == null)
-            return null;
-
-        switch (parts.length) {
-            case 1: // Slash command with no children
-                return command;
-            case 2: // Slash command with children
-                // child check
-                for(SlashCommand cmd: command.getChildren())
-                    if(cmd.isCommandFor(parts[1]) && cmd.getSubcommandGroup() == null)
-                        return cmd;
-
-                return null;
-            case 3: // Slash command with a group and a child
-                for(SlashCommand cmd: command.getChildren())
-                    if(cmd.isCommandFor(parts[2]) && cmd.getSubcommandGroup() != null && cmd.getSubcommandGroup().getName().equals(parts[1]))
-                        return cmd;
-
-                return null;
-        }
-
-        // How did we get here?
-        return null;
+        // this will be null if it's not a command
+        return registry.get().getSlashCommandByPath(path);
     }
 
     private void onUserContextMenu(UserContextInteractionEvent event)
     {
-        final UserContextMenu menu; // this will be null if it's not a command
-        synchronized(contextMenuIndex)
-        {
-            ContextMenu c;
-            int i = contextMenuIndex.getOrDefault(event.getName(), -1);
-            c = i != -1 ? contextMenus.get(i) : null;
-
-            if (c instanceof UserContextMenu)
-                menu = (UserContextMenu) c;
-            else
-                menu = null;
-        }
+        // this will be null if it's not a command
+        final UserContextMenu menu = registry.get().getUserContextMenu(event.getName());
 
         final UserContextMenuEvent menuEvent = new UserContextMenuEvent(event.getJDA(), event.getResponseNumber(), event,this);
 
@@ -1006,27 +1297,17 @@ public class CommandClientImpl implements CommandClient, EventListener
         {
             if(listener != null)
                 listener.onUserContextMenu(menuEvent, menu);
-            uses.put(menu.getName(), uses.getOrDefault(menu.getName(), 0) + 1);
-            menu.run(menuEvent);
+            metrics.recordUse(menu);
+            execute(laneKey(event), menu, () -> menu.run(menuEvent));
             // Command is done
         }
     }
 
     private void onMessageContextMenu(MessageContextInteractionEvent event)
     {
-        final MessageContextMenu menu; // this will be null if it's not a command
-        synchronized(contextMenuIndex)
-        {
-            ContextMenu c;
-            // Do not lowercase, as there could be 2 menus with the same name, but different letter cases
-            int i = contextMenuIndex.getOrDefault(event.getName(), -1);
-            c = i != -1 ? contextMenus.get(i) : null;
-
-            if (c instanceof MessageContextMenu)
-                menu = (MessageContextMenu) c;
-            else
-                menu = null;
-        }
+        // this will be null if it's not a command
+        // Do not lowercase, as there could be 2 menus with the same name, but different letter cases
+        final MessageContextMenu menu = registry.get().getMessageContextMenu(event.getName());
 
         final MessageContextMenuEvent menuEvent = new MessageContextMenuEvent(event.getJDA(), event.getResponseNumber(), event,this);
 
@@ -1034,101 +1315,67 @@ public class CommandClientImpl implements CommandClient, EventListener
         {
             if(listener != null)
                 listener.onMessageContextMenu(menuEvent, menu);
-            uses.put(menu.getName(), uses.getOrDefault(menu.getName(), 0) + 1);
-            menu.run(menuEvent);
+            metrics.recordUse(menu);
+            execute(laneKey(event), menu, () -> menu.run(menuEvent));
             // Command is done
         }
     }
 
-    private void sendStats(JDA jda)
+    /**
+     * Hands a task running an interaction to the {@link CommandExecutionStrategy CommandExecutionStrategy}
+     * of its execution group, first queueing it on its ordered lane if lanes are enabled.
+     *
+     * @param  laneKey
+     *         The ID of the guild the interaction is from, or of the channel if it is not from a guild
+     * @param  interaction
+     *         The interaction being run
+     * @param  task
+     *         The task running it
+     */
+    private void execute(long laneKey, Interaction interaction, Runnable task)
     {
-        OkHttpClient client = jda.getHttpClient();
-
-        if(carbonKey != null)
+        CommandExecutionStrategy strategy = getExecutionStrategy(interaction.getExecutionGroup());
+        if(lanes != null)
         {
-            FormBody.Builder bodyBuilder = new FormBody.Builder()
-                    .add("key", carbonKey)
-                    .add("servercount", Integer.toString(jda.getGuilds().size()));
-
-            if(jda.getShardInfo() != JDA.ShardInfo.SINGLE)
-            {
-                bodyBuilder.add("shard_id", Integer.toString(jda.getShardInfo().getShardId()))
-                           .add("shard_count", Integer.toString(jda.getShardInfo().getShardTotal()));
-            }
-
-            Request.Builder builder = new Request.Builder()
-                    .post(bodyBuilder.build())
-                    .url("https://www.carbonitex.net/discord/data/botdata.php");
-
-            client.newCall(builder.build()).enqueue(new Callback()
-            {
-                @Override
-                public void onResponse(Call call, Response response)
-                {
-                    LOG.info("Successfully send information to carbonitex.net");
-                    response.close();
-                }
-
-                @Override
-                public void onFailure(Call call, IOException e)
-                {
-                    LOG.error("Failed to send information to carbonitex.net ", e);
-                }
-            });
+            lanes.submit(laneKey, strategy, interaction, task);
+            return;
         }
-
-        if(botsKey != null)
+        try
         {
-            JSONObject body = new JSONObject().put("guildCount", jda.getGuilds().size());
-            if(jda.getShardInfo() != JDA.ShardInfo.SINGLE)
-            {
-                body.put("shardId", jda.getShardInfo().getShardId())
-                    .put("shardCount", jda.getShardInfo().getShardTotal());
-            }
-
-            Request.Builder builder = new Request.Builder()
-                    .post(RequestBody.create(MediaType.parse("application/json"), body.toString()))
-                    .url("https://discord.bots.gg/api/v1/bots/" + jda.getSelfUser().getId() + "/stats")
-                    .header("Authorization", botsKey)
-                    .header("Content-Type", "application/json");
-
-            client.newCall(builder.build()).enqueue(new Callback()
-            {
-                @Override
-                public void onResponse(Call call, Response response) throws IOException
-                {
-                    if(response.isSuccessful())
-                    {
-                        LOG.info("Successfully sent information to discord.bots.gg");
-                        try(Reader reader = response.body().charStream())
-                        {
-                            totalGuilds = new JSONObject(new JSONTokener(reader)).getInt("guildCount");
-                        }
-                        catch(Exception ex)
-                        {
-                            LOG.error("Failed to retrieve bot shard information from discord.bots.gg ", ex);
-                        }
-                    }
-                    else
-                        LOG.error("Failed to send information to discord.bots.gg: "+response.body().string());
-                    response.close();
-                }
-
-                @Override
-                public void onFailure(Call call, IOException e)
-                {
-                    LOG.error("Failed to send information to discord.bots.gg ", e);
-                }
-            });
+            strategy.execute(interaction, task);
         }
-        else if (jda.getShardManager() != null)
+        catch(RejectedExecutionException e)
         {
-            totalGuilds = (int) jda.getShardManager().getGuildCache().size();
+            LOG.warn("Execution of a command was rejected" + (interaction.getExecutionGroup()==null ? "" :
+                " by execution group '" + interaction.getExecutionGroup() + "'") + ": " + e.getMessage());
         }
-        else
+    }
+
+    private static long[] compileOwnerIds(String ownerId, String[] coOwnerIds)
+    {
+        // Sorted, so isOwner can binary search without parsing or comparing Strings
+        long[] ids = new long[1 + (coOwnerIds == null ? 0 : coOwnerIds.length)];
+        int size = 0;
+        long owner = SafeIdUtil.safeConvert(ownerId);
+        if(owner != 0)
+            ids[size++] = owner;
+        if(coOwnerIds != null)
         {
-            totalGuilds = (int) jda.getGuildCache().size();
+            for(String coOwnerId : coOwnerIds)
+            {
+                long id = SafeIdUtil.safeConvert(coOwnerId);
+                if(id != 0)
+                    ids[size++] = id;
+            }
         }
+        ids = Arrays.copyOf(ids, size);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static long laneKey(net.dv8tion.jda.api.interactions.Interaction event)
+    {
+        return event.getGuild() != null ? event.getGuild().getIdLong() : event.getChannelIdLong();
     }
 
     private void onMessageDelete(MessageDeleteEvent event)
@@ -1138,28 +1385,50 @@ public class CommandClientImpl implements CommandClient, EventListener
 
         // We don't need to cover whether or not this client usesLinkedDeletion() because
         // that is checked in onEvent(Event) before this is even called.
-        synchronized(linkMap)
+        long[] linked = linkMap.remove(event.getMessageIdLong());
+        if(linked == null)
+            return;
+
+        // Responses in the call's channel can be bulk deleted, responses elsewhere (such as DMs) are deleted one by one
+        long channelId = event.getChannel().getIdLong();
+        boolean canBulkDelete = (getSelfPermissions(event.getGuildChannel()) & Permission.MESSAGE_MANAGE.getRawValue()) != 0;
+        // Older messages are deleted one by one, as bulk deletes reject them
+        long bulkCutoff = TimeUtil.getDiscordTimestamp(System.currentTimeMillis() - BULK_DELETE_MAX_AGE_MILLIS);
+        List<String> bulk = new ArrayList<>(Math.min(linked.length / 2, BULK_DELETE_LIMIT));
+        for(int i = 0; i < linked.length; i += 2)
         {
-            if(linkMap.contains(event.getMessageIdLong()))
+            if(linked[i] != channelId)
+                continue;
+            String id = Long.toUnsignedString(linked[i + 1]);
+            if(canBulkDelete && linked[i + 1] > bulkCutoff)
             {
-                Set<Message> messages = linkMap.get(event.getMessageIdLong());
-                if(messages.size()>1 && event.getGuild().getSelfMember()
-                        .hasPermission(event.getChannel().asTextChannel(), Permission.MESSAGE_MANAGE))
-                    event.getChannel().asTextChannel().deleteMessages(messages).queue(unused -> {}, ignored -> {});
-                else if(messages.size()>0)
-                    messages.forEach(m -> m.delete().queue(unused -> {}, ignored -> {}));
+                bulk.add(id);
+                if(bulk.size() == BULK_DELETE_LIMIT)
+                {
+                    event.getGuildChannel().deleteMessagesByIds(bulk).queue(unused -> {}, ignored -> {});
+                    bulk = new ArrayList<>();
+                }
             }
+            else
+                event.getChannel().deleteMessageById(id).queue(unused -> {}, ignored -> {});
+        }
+        // Bulk deletes need at least two messages
+        if(bulk.size() > 1)
+            event.getGuildChannel().deleteMessagesByIds(bulk).queue(unused -> {}, ignored -> {});
+        else if(bulk.size() == 1)
+            event.getChannel().deleteMessageById(bulk.get(0)).queue(unused -> {}, ignored -> {});
+        for(int i = 0; i < linked.length; i += 2)
+        {
+            if(linked[i] == channelId)
+                continue;
+            MessageChannel channel = event.getJDA().getChannelById(MessageChannel.class, linked[i]);
+            if(channel == null)
+                channel = event.getJDA().getPrivateChannelById(linked[i]);
+            if(channel != null)
+                channel.deleteMessageById(linked[i + 1]).queue(unused -> {}, ignored -> {});
         }
     }
 
-    private GuildSettingsProvider provideSettings(Guild guild)
-    {
-        Object settings = getSettingsFor(guild);
-        if(settings instanceof GuildSettingsProvider) //implicit null check
-            return (GuildSettingsProvider)settings;
-        else
-            return null;
-    }
 
     /**
      * <b>DO NOT USE THIS!</b>
@@ -1179,29 +1448,123 @@ public class CommandClientImpl implements CommandClient, EventListener
         if(!usesLinkedDeletion())
             return;
 
-        synchronized(linkMap)
+        linkMap.link(callId, message.getChannel().getIdLong(), message.getIdLong());
+    }
+
+    private HelpDocuments getHelpDocuments(CommandEvent event)
+    {
+        List<Command> commands = registry.get().getCommands();
+        String selfName = event.getSelfUser().getName();
+        HelpDocuments documents = helpDocuments;
+        boolean current = documents != null && documents.isFor(commands, selfName, textPrefix);
+        // The owner may not have been cached when the documents were built, so look them up again now and then
+        if(current && (documents.contact != null || System.nanoTime() - documents.checkedAt < CONTACT_RECHECK_NANOS))
+            return documents;
+        User owner = event.getJDA().getUserById(ownerId);
+        String contact = owner == null ? null : "**" + owner.getName() + "**#" + owner.getDiscriminator();
+        if(current && contact == null)
         {
-            Set<Message> stored = linkMap.get(callId);
-            if(stored != null)
-                stored.add(message);
-            else
+            documents.checkedAt = System.nanoTime();
+            return documents;
+        }
+        documents = new HelpDocuments(commands, selfName, textPrefix, contact);
+        helpDocuments = documents;
+        return documents;
+    }
+
+    /**
+     * The output of the default help consumer, built lazily for owners and for everyone else.
+     * <br>Documents are built from one registry snapshot, so registering or removing a command
+     * makes the client build new ones on the next help request.
+     */
+    private final class HelpDocuments {
+        private final List<Command> commands;
+        private final String selfName;
+        private final String textPrefix;
+        private final String contact;
+        private volatile String ownerDocument;
+        private volatile String document;
+        private volatile long checkedAt = System.nanoTime();
+
+        private HelpDocuments(List<Command> commands, String selfName, String textPrefix, String contact) {
+            this.commands = commands;
+            this.selfName = selfName;
+            this.textPrefix = textPrefix;
+            this.contact = contact;
+        }
+
+        private boolean isFor(List<Command> commands, String selfName, String textPrefix) {
+            return this.commands == commands && this.textPrefix == textPrefix && this.selfName.equals(selfName);
+        }
+
+        private String get(boolean owner) {
+            // Racing threads may both build a document, but they build the same one
+            String built = owner ? ownerDocument : document;
+            if(built == null) {
+                built = build(owner);
+                if(owner)
+                    ownerDocument = built;
+                else
+                    document = built;
+            }
+            return built;
+        }
+
+        private String build(boolean owner) {
+            StringBuilder builder = new StringBuilder("**"+selfName+"** commands:\n");
+            Category category = null;
+            for(Command command : commands)
             {
-                stored = new HashSet<>();
-                stored.add(message);
-                linkMap.add(callId, stored);
+                if(!command.isHidden() && (!command.isOwnerCommand() || owner))
+                {
+                    if(!Objects.equals(category, command.getCategory()))
+                    {
+                        category = command.getCategory();
+                        builder.append("\n\n  __").append(category==null ? "No Category" : category.getName()).append("__:\n");
+                    }
+                    builder.append("\n`").append(textPrefix).append(prefix==null?" ":"").append(command.getName())
+                           .append(command.getArguments()==null ? "`" : " "+command.getArguments()+"`")
+                           .append(" - ").append(command.getHelp());
+                }
             }
+            if(contact!=null)
+            {
+                builder.append("\n\nFor additional help, contact ").append(contact);
+                if(serverInvite!=null)
+                    builder.append(" or join ").append(serverInvite);
+            }
+            return builder.toString();
+        }
+    }
+
+    private static class GuildPrefixes {
+        private final Collection<String> source;
+        private final int hash;
+        private final PrefixTrie trie;
+        private volatile long checkedAt;
+
+        private GuildPrefixes(Collection<String> source, int hash, PrefixTrie trie) {
+            this.source = source;
+            this.hash = hash;
+            this.trie = trie;
         }
     }
 
     private static class MessageParts {
-        private final String prefixUsed;
-        private final String command;
-        private final String args;
-
-        private MessageParts(String prefixUsed, String command, String args) {
-            this.prefixUsed = prefixUsed;
-            this.command = command;
-            this.args = args;
+        private final String rawContent;
+        private final int prefixLength;
+        private final int commandEnd;
+        private final int argsStart;
+
+        private MessageParts(String rawContent, int prefixLength, int commandEnd, int argsStart) {
+            this.rawContent = rawContent;
+            this.prefixLength = prefixLength;
+            this.commandEnd = commandEnd;
+            this.argsStart = argsStart;
+        }
+
+        private boolean isCommand(String name) {
+            return commandEnd - prefixLength == name.length() && rawContent.regionMatches(true, prefixLength, name, 0, name.length());
         }
     }
 }
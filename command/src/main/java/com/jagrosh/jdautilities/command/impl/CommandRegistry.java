@@ -0,0 +1,273 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.Command;
+import com.jagrosh.jdautilities.command.ContextMenu;
+import com.jagrosh.jdautilities.command.MessageContextMenu;
+import com.jagrosh.jdautilities.command.SlashCommand;
+import com.jagrosh.jdautilities.command.UserContextMenu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * An immutable snapshot of every {@link com.jagrosh.jdautilities.command.Command Command},
+ * {@link com.jagrosh.jdautilities.command.SlashCommand SlashCommand} and
+ * {@link com.jagrosh.jdautilities.command.ContextMenu ContextMenu} registered to a
+ * {@link CommandClientImpl CommandClientImpl}.
+ *
+ * <p>Snapshots are never modified once created. Registering or removing anything creates a new
+ * snapshot, which the client publishes atomically, so dispatching threads can read the current
+ * snapshot without taking any locks.
+ */
+final class CommandRegistry
+{
+    static final CommandRegistry EMPTY = new CommandRegistry(
+        Collections.emptyList(), Collections.emptyMap(), CaseInsensitiveIndex.of(Collections.emptyMap()),
+        Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(),
+        Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap());
+
+    private final List<Command> commands;
+    private final Map<String, Command> commandIndex;
+    private final CaseInsensitiveIndex<Command> commandLookup;
+    private final List<SlashCommand> slashCommands;
+    private final Map<String, SlashCommand> slashCommandIndex;
+    private final Map<String, SlashCommand> slashCommandPaths;
+    private final List<ContextMenu> contextMenus;
+    private final Map<String, UserContextMenu> userContextMenuIndex;
+    private final Map<String, MessageContextMenu> messageContextMenuIndex;
+
+    // Indexes derived from a kind of command are passed along, so a change only rebuilds those of its own kind
+    private CommandRegistry(List<Command> commands, Map<String, Command> commandIndex, CaseInsensitiveIndex<Command> commandLookup,
+                            List<SlashCommand> slashCommands, Map<String, SlashCommand> slashCommandIndex,
+                            Map<String, SlashCommand> slashCommandPaths,
+                            List<ContextMenu> contextMenus, Map<String, UserContextMenu> userContextMenuIndex,
+                            Map<String, MessageContextMenu> messageContextMenuIndex)
+    {
+        this.commands = commands;
+        this.commandIndex = commandIndex;
+        this.commandLookup = commandLookup;
+        this.slashCommands = slashCommands;
+        this.slashCommandIndex = slashCommandIndex;
+        this.slashCommandPaths = slashCommandPaths;
+        this.contextMenus = contextMenus;
+        this.userContextMenuIndex = userContextMenuIndex;
+        this.messageContextMenuIndex = messageContextMenuIndex;
+    }
+
+    List<Command> getCommands()
+    {
+        return commands;
+    }
+
+    List<SlashCommand> getSlashCommands()
+    {
+        return slashCommands;
+    }
+
+    List<ContextMenu> getContextMenus()
+    {
+        return contextMenus;
+    }
+
+    /**
+     * Gets the Command with the provided name or alias, ignoring case.
+     *
+     * @param  source
+     *         The characters containing the name or alias
+     * @param  start
+     *         The index the name starts at, inclusive
+     * @param  end
+     *         The index the name ends at, exclusive
+     *
+     * @return The Command, or {@code null} if none is indexed under the name
+     */
+    Command getCommand(CharSequence source, int start, int end)
+    {
+        return commandLookup.get(source, start, end);
+    }
+
+    SlashCommand getSlashCommand(String name)
+    {
+        return slashCommandIndex.get(name);
+    }
+
+    /**
+     * Gets the SlashCommand, subcommand or grouped subcommand handling the provided full command path,
+     * such as {@code "name"}, {@code "name sub"} or {@code "name group sub"}.
+     *
+     * @param  path
+     *         The full command path, as given by
+     *         {@link net.dv8tion.jda.api.interactions.commands.CommandInteractionPayload#getFullCommandName()}
+     *
+     * @return The SlashCommand, or {@code null} if no command handles the path
+     */
+    SlashCommand getSlashCommandByPath(String path)
+    {
+        return slashCommandPaths.get(path);
+    }
+
+    UserContextMenu getUserContextMenu(String name)
+    {
+        return userContextMenuIndex.get(name);
+    }
+
+    MessageContextMenu getMessageContextMenu(String name)
+    {
+        return messageContextMenuIndex.get(name);
+    }
+
+    CommandRegistry withCommand(Command command, int index)
+    {
+        return withCommands(Collections.singletonList(command), c -> index);
+    }
+
+    /**
+     * Adds several Commands at once after every Command already registered, in order.
+     *
+     * @param  added
+     *         The Commands to add
+     *
+     * @return The new registry
+     */
+    CommandRegistry withCommands(List<Command> added)
+    {
+        int[] next = {commands.size()};
+        return withCommands(added, command -> next[0]++);
+    }
+
+    /**
+     * Adds several Commands at once, copying and indexing the Commands only once for all of them.
+     *
+     * @param  added
+     *         The Commands to add, in order
+     * @param  indexOf
+     *         The index to insert each Command at, once the ones before it were inserted
+     *
+     * @return The new registry
+     */
+    CommandRegistry withCommands(List<Command> added, ToIntFunction<Command> indexOf)
+    {
+        List<Command> newCommands = new ArrayList<>(commands);
+        Map<String, Command> newIndex = new HashMap<>(commandIndex);
+        for(Command command : added)
+        {
+            int index = indexOf.applyAsInt(command);
+            if(index>newCommands.size() || index<0)
+                throw new ArrayIndexOutOfBoundsException("Index specified is invalid: ["+index+"/"+newCommands.size()+"]");
+            String name = command.getName().toLowerCase(Locale.ROOT);
+            //check for collision
+            if(newIndex.containsKey(name))
+                throw new IllegalArgumentException("Command added has a name or alias that has already been indexed: \""+name+"\"!");
+            for(String alias : command.getAliases())
+            {
+                if(newIndex.containsKey(alias.toLowerCase(Locale.ROOT)))
+                    throw new IllegalArgumentException("Command added has a name or alias that has already been indexed: \""+alias+"\"!");
+            }
+            newCommands.add(index, command);
+            newIndex.put(name, command);
+            for(String alias : command.getAliases())
+                newIndex.put(alias.toLowerCase(Locale.ROOT), command);
+        }
+        return new CommandRegistry(Collections.unmodifiableList(newCommands), newIndex, CaseInsensitiveIndex.of(newIndex),
+            slashCommands, slashCommandIndex, slashCommandPaths, contextMenus, userContextMenuIndex, messageContextMenuIndex);
+    }
+
+    CommandRegistry withoutCommand(String name)
+    {
+        Command removed = commandIndex.get(name.toLowerCase(Locale.ROOT));
+        if(removed == null)
+            throw new IllegalArgumentException("Name provided is not indexed: \"" + name + "\"!");
+        List<Command> newCommands = new ArrayList<>(commands);
+        newCommands.remove(removed);
+        Map<String, Command> newIndex = new HashMap<>(commandIndex);
+        newIndex.remove(removed.getName().toLowerCase(Locale.ROOT));
+        for(String alias : removed.getAliases())
+            newIndex.remove(alias.toLowerCase(Locale.ROOT));
+        return new CommandRegistry(Collections.unmodifiableList(newCommands), newIndex, CaseInsensitiveIndex.of(newIndex),
+            slashCommands, slashCommandIndex, slashCommandPaths, contextMenus, userContextMenuIndex, messageContextMenuIndex);
+    }
+
+    CommandRegistry withSlashCommand(SlashCommand command, int index)
+    {
+        if(index>slashCommands.size() || index<0)
+            throw new ArrayIndexOutOfBoundsException("Index specified is invalid: ["+index+"/"+slashCommands.size()+"]");
+        String name = command.getName().toLowerCase(Locale.ROOT);
+        //check for collision
+        if(slashCommandIndex.containsKey(name))
+            throw new IllegalArgumentException("Command added has a name that has already been indexed: \""+name+"\"!");
+        List<SlashCommand> newCommands = new ArrayList<>(slashCommands);
+        newCommands.add(index, command);
+        Map<String, SlashCommand> newIndex = new HashMap<>(slashCommandIndex);
+        newIndex.put(name, command);
+        return new CommandRegistry(commands, commandIndex, commandLookup, Collections.unmodifiableList(newCommands), newIndex,
+            indexPaths(newCommands), contextMenus, userContextMenuIndex, messageContextMenuIndex);
+    }
+
+    CommandRegistry withContextMenu(ContextMenu menu, int index)
+    {
+        if(index>contextMenus.size() || index<0)
+            throw new ArrayIndexOutOfBoundsException("Index specified is invalid: ["+index+"/"+contextMenus.size()+"]");
+        // Do not lowercase, as there could be 2 menus with the same name, but different letter cases
+        // User and message menus are indexed separately, as Discord allows one of each to share a name
+        String name = menu.getName();
+        Map<String, UserContextMenu> newUserIndex = userContextMenuIndex;
+        Map<String, MessageContextMenu> newMessageIndex = messageContextMenuIndex;
+        if(menu instanceof UserContextMenu)
+        {
+            if(userContextMenuIndex.containsKey(name))
+                throw new IllegalArgumentException("User Context Menu added has a name that has already been indexed: \"" + name + "\"!");
+            newUserIndex = new HashMap<>(userContextMenuIndex);
+            newUserIndex.put(name, (UserContextMenu) menu);
+        }
+        else if(menu instanceof MessageContextMenu)
+        {
+            if(messageContextMenuIndex.containsKey(name))
+                throw new IllegalArgumentException("Message Context Menu added has a name that has already been indexed: \"" + name + "\"!");
+            newMessageIndex = new HashMap<>(messageContextMenuIndex);
+            newMessageIndex.put(name, (MessageContextMenu) menu);
+        }
+        List<ContextMenu> newMenus = new ArrayList<>(contextMenus);
+        newMenus.add(index, menu);
+        return new CommandRegistry(commands, commandIndex, commandLookup, slashCommands, slashCommandIndex,
+            slashCommandPaths, Collections.unmodifiableList(newMenus), newUserIndex, newMessageIndex);
+    }
+
+    private static Map<String, SlashCommand> indexPaths(List<SlashCommand> slashCommands)
+    {
+        Map<String, SlashCommand> paths = new HashMap<>();
+        for(SlashCommand command : slashCommands)
+        {
+            String name = command.getName().toLowerCase(Locale.ROOT);
+            paths.put(name, command);
+            for(SlashCommand child : command.getChildren())
+            {
+                String path = child.getSubcommandGroup() == null
+                    ? name + " " + child.getName()
+                    : name + " " + child.getSubcommandGroup().getName() + " " + child.getName();
+                // The first child for a path wins, as it did when children were scanned in order
+                paths.putIfAbsent(path.toLowerCase(Locale.ROOT), child);
+            }
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+/**
+ * Constants of the binary protocol spoken between {@link RemoteCooldownStore RemoteCooldownStore}
+ * and {@link CooldownStoreServer CooldownStoreServer}.
+ *
+ * <p>Every request is framed as:
+ * <pre>
+ *     int  requestId
+ *     byte op
+ *     int  count
+ *     count * (long head, long first, long second, long nanos)
+ * </pre>
+ * And answered, in any order, with:
+ * <pre>
+ *     int  requestId
+ *     int  count
+ *     count * long result
+ * </pre>
+ * A response with a negative count reports that the request failed.
+ */
+final class CooldownProtocol
+{
+    static final byte TRY_ACQUIRE = 1;
+    static final byte GET_REMAINING = 2;
+    static final byte APPLY = 3;
+
+    static final int MAX_BATCH = 4096;
+
+    private CooldownProtocol() {}
+}
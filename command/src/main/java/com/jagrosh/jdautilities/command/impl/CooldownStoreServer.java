@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.CooldownKey;
+import com.jagrosh.jdautilities.command.CooldownStore;
+import net.dv8tion.jda.internal.utils.Checks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A reference server sharing a {@link CooldownStore CooldownStore} with any number of
+ * {@link RemoteCooldownStore RemoteCooldownStore}s.
+ *
+ * <p>Each connection is served by its own thread, requests are handled in the order they arrive.
+ * <br>The server can be embedded in one of the processes running the bot, or run on its own with
+ * <pre><code>java -cp ... com.jagrosh.jdautilities.command.impl.CooldownStoreServer [port] [host]</code></pre>
+ *
+ * <p><b>The protocol is not authenticated</b>, so the server should only be reachable by the processes running the bot.
+ * <br>Unless an address is provided, it only listens on the loopback address.
+ */
+public class CooldownStoreServer implements Closeable
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CooldownStoreServer.class);
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+
+    private final ServerSocket server;
+    private final CooldownStore store;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public CooldownStoreServer(int port) throws IOException
+    {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), new InMemoryCooldownStore());
+    }
+
+    /**
+     * Creates a server listening on the provided address.
+     *
+     * <p><b>Anyone able to reach the address can read, apply and reset every cooldown</b>, as the protocol
+     * has no authentication. Only listen on an address outside the loopback one behind a firewall or on a
+     * private network restricted to the processes running the bot.
+     *
+     * @param  address
+     *         The address to listen on
+     * @param  store
+     *         The store holding the cooldowns
+     *
+     * @throws IOException
+     *         If the address could not be bound
+     */
+    public CooldownStoreServer(InetSocketAddress address, CooldownStore store) throws IOException
+    {
+        Checks.notNull(store, "CooldownStore");
+        this.store = store;
+        this.server = new ServerSocket();
+        this.server.bind(address);
+    }
+
+    /**
+     * Starts accepting connections on a background thread.
+     *
+     * @return This server
+     */
+    public CooldownStoreServer start()
+    {
+        Thread acceptor = new Thread(this::accept, "CooldownStoreServer-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    /**
+     * Gets the port this server is listening on.
+     *
+     * @return The port
+     */
+    public int getPort()
+    {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        server.close();
+        for(Socket client : clients)
+            client.close();
+        store.shutdown();
+    }
+
+    private void accept()
+    {
+        while(!closed)
+        {
+            try
+            {
+                Socket client = server.accept();
+                client.setTcpNoDelay(true);
+                clients.add(client);
+                Thread handler = new Thread(() -> serve(client), "CooldownStoreServer-" + client.getRemoteSocketAddress());
+                handler.setDaemon(true);
+                handler.start();
+            }
+            catch(IOException e)
+            {
+                if(closed)
+                    return;
+                LOG.error("Failed to accept a cooldown store connection", e);
+                // Failures such as running out of file descriptors persist for a while, don't spin on them
+                try
+                {
+                    Thread.sleep(ACCEPT_RETRY_MILLIS);
+                }
+                catch(InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client)
+    {
+        try(Socket socket = client)
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            List<CooldownKey> keys = new ArrayList<>();
+            while(true)
+            {
+                int id = in.readInt();
+                byte op = in.readByte();
+                int count = in.readInt();
+                if(count < 0 || count > CooldownProtocol.MAX_BATCH)
+                    throw new IOException("Invalid batch size: " + count);
+                keys.clear();
+                long[] nanos = new long[count];
+                for(int i = 0; i < count; i++)
+                {
+                    keys.add(CooldownKey.of(in.readLong(), in.readLong(), in.readLong()));
+                    nanos[i] = in.readLong();
+                }
+
+                long[] results = handle(op, keys, nanos);
+                out.writeInt(id);
+                if(results == null)
+                {
+                    out.writeInt(-1);
+                }
+                else
+                {
+                    out.writeInt(results.length);
+                    for(long result : results)
+                        out.writeLong(result);
+                }
+                // Only flush once every request read so far has been answered
+                if(in.available() == 0)
+                    out.flush();
+            }
+        }
+        catch(EOFException ignored)
+        {
+            // The client disconnected
+        }
+        catch(IOException e)
+        {
+            if(!closed)
+                LOG.warn("Cooldown store connection failed: {}", e.toString());
+        }
+        finally
+        {
+            clients.remove(client);
+        }
+    }
+
+    private long[] handle(byte op, List<CooldownKey> keys, long[] nanos)
+    {
+        try
+        {
+            switch(op)
+            {
+                case CooldownProtocol.TRY_ACQUIRE:
+                    return store.tryAcquireAll(keys, nanos);
+                case CooldownProtocol.GET_REMAINING:
+                {
+                    long[] results = new long[keys.size()];
+                    for(int i = 0; i < results.length; i++)
+                        results[i] = store.getRemaining(keys.get(i));
+                    return results;
+                }
+                case CooldownProtocol.APPLY:
+                    for(int i = 0; i < keys.size(); i++)
+                        store.apply(keys.get(i), nanos[i]);
+                    return new long[keys.size()];
+                default:
+                    return null;
+            }
+        }
+        catch(RuntimeException e)
+        {
+            LOG.error("Failed to handle a cooldown store request", e);
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7687;
+        CooldownStoreServer server = (args.length > 1
+            ? new CooldownStoreServer(new InetSocketAddress(args[1], port), new InMemoryCooldownStore())
+            : new CooldownStoreServer(port)).start();
+        LOG.info("Cooldown store server listening on {}:{}", args.length > 1 ? args[1] : "localhost", server.getPort());
+        // The acceptor is a daemon thread, keep the JVM alive until interrupted
+        try
+        {
+            Thread.currentThread().join();
+        }
+        catch(InterruptedException e)
+        {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.CommandExecutionStrategy;
+import com.jagrosh.jdautilities.command.Interaction;
+import net.dv8tion.jda.internal.utils.Checks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link com.jagrosh.jdautilities.command.CommandExecutionStrategy CommandExecutionStrategy}
+ * running commands on an {@link java.util.concurrent.ExecutorService ExecutorService}, keeping
+ * track of how many commands are waiting and how many were rejected.
+ *
+ * @see CommandExecutionStrategy#virtualThreads()
+ * @see CommandExecutionStrategy#boundedPool(int, int)
+ * @see CommandExecutionStrategy#fromExecutor(ExecutorService)
+ */
+public class ExecutorExecutionStrategy implements CommandExecutionStrategy
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CommandExecutionStrategy.class);
+
+    private final ExecutorService executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public ExecutorExecutionStrategy(ExecutorService executor)
+    {
+        Checks.notNull(executor, "ExecutorService");
+        this.executor = executor;
+    }
+
+    public static ExecutorExecutionStrategy virtualThreads()
+    {
+        try
+        {
+            // Looked up reflectively, as virtual threads are not available on every supported JVM
+            ExecutorService executor = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new ExecutorExecutionStrategy(executor);
+        }
+        catch(ReflectiveOperationException e)
+        {
+            LOG.warn("Virtual threads are not supported by this JVM, falling back to a cached thread pool for commands.");
+            return new ExecutorExecutionStrategy(Executors.newCachedThreadPool(threadFactory("cmd-exec")));
+        }
+    }
+
+    public static ExecutorExecutionStrategy boundedPool(int threads, int queueCapacity)
+    {
+        Checks.positive(threads, "Thread count");
+        Checks.positive(queueCapacity, "Queue capacity");
+        return new ExecutorExecutionStrategy(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory("cmd-pool")));
+    }
+
+    @Override
+    public void execute(Interaction interaction, Runnable task)
+    {
+        queued.incrementAndGet();
+        try
+        {
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                try
+                {
+                    task.run();
+                }
+                catch(Throwable t)
+                {
+                    // Thrown out of the executor, it would only reach the thread's uncaught exception handler
+                    LOG.error("Execution of a command failed", t);
+                }
+            });
+        }
+        catch(RejectedExecutionException e)
+        {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        // Tasks dropped by shutdownNow() never run to be uncounted, so ask the pool itself when it can tell
+        if(executor instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        return executor.isTerminated() ? 0 : queued.get();
+    }
+
+    @Override
+    public long getRejectedCount()
+    {
+        return rejected.sum();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    private static ThreadFactory threadFactory(String name)
+    {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.GuildSettingsStore;
+import net.dv8tion.jda.internal.utils.Checks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link GuildSettingsStore GuildSettingsStore} keeping settings in append-only log segments in a directory.
+ *
+ * <p>Every batch is appended to the active segment as one record per Guild, and made durable with a single
+ * fsync. Once the active segment grows past the segment size, a new one is started. Once the segments hold
+ * more than twice the size of the live settings, and more than a segment in total, they are compacted into a single segment holding only the
+ * latest settings of each Guild, along with a tombstone for each removed Guild, and the older segments are deleted.
+ *
+ * <p>Each record is checksummed, so a record torn by a crash during a write is detected and ignored, along
+ * with the rest of its segment, when loading. A write failing partway starts a new segment, so no later
+ * batch is appended after a torn record.
+ *
+ * @param  <T>
+ *         The specific type of the settings object.
+ */
+public class FileGuildSettingsStore<T> implements GuildSettingsStore<T>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(FileGuildSettingsStore.class);
+    private static final String PREFIX = "settings-", SUFFIX = ".log";
+    private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    // Guild ID, value length and checksum
+    private static final int RECORD_OVERHEAD = 8 + 4 + 4;
+
+    private final Path directory;
+    private final Function<T, byte[]> encoder;
+    private final Function<byte[], T> decoder;
+    private final long segmentSize;
+
+    // The latest encoded settings of each Guild, kept for compaction
+    private final Map<Long, byte[]> live = new HashMap<>();
+    // Guilds whose settings were removed, which compaction keeps tombstones for while older segments may remain
+    private final Set<Long> removed = new HashSet<>();
+    private final List<Path> segments = new ArrayList<>();
+    private long liveBytes, totalBytes;
+    private long nextSegment = 1;
+    private FileChannel active;
+    private long activeBytes;
+
+    public FileGuildSettingsStore(Path directory, Function<T, byte[]> encoder, Function<byte[], T> decoder)
+    {
+        this(directory, encoder, decoder, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public FileGuildSettingsStore(Path directory, Function<T, byte[]> encoder, Function<byte[], T> decoder, long segmentSize)
+    {
+        Checks.notNull(directory, "Directory");
+        Checks.notNull(encoder, "Encoder");
+        Checks.notNull(decoder, "Decoder");
+        Checks.positive(segmentSize, "Segment size");
+        this.directory = directory;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public synchronized Map<Long, T> load() throws IOException
+    {
+        Files.createDirectories(directory);
+        live.clear();
+        removed.clear();
+        segments.clear();
+        liveBytes = totalBytes = 0;
+        List<Path> found = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX))
+        {
+            for(Path path : stream)
+                found.add(path);
+        }
+        // Segment numbers are zero padded, so their names sort in the order they were written
+        Collections.sort(found);
+        for(Path segment : found)
+        {
+            nextSegment = Math.max(nextSegment, segmentNumber(segment) + 1);
+            // Segments started by a previous load that were never written to
+            if(Files.size(segment) == 0)
+            {
+                Files.delete(segment);
+                continue;
+            }
+            readSegment(segment);
+            segments.add(segment);
+        }
+
+        Map<Long, T> settings = new HashMap<>();
+        live.forEach((guildId, value) -> settings.put(guildId, decoder.apply(value)));
+        // Always append to a new segment, rather than after a possibly torn record
+        openSegment();
+        return settings;
+    }
+
+    @Override
+    public synchronized void write(Map<Long, T> changes) throws IOException
+    {
+        if(active == null)
+            throw new IllegalStateException("Settings must be loaded before they are written");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Map<Long, byte[]> encoded = new HashMap<>();
+        for(Map.Entry<Long, T> change : changes.entrySet())
+        {
+            byte[] value = change.getValue() == null ? null : encoder.apply(change.getValue());
+            writeRecord(out, change.getKey(), value);
+            encoded.put(change.getKey(), value);
+        }
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while(buffer.hasRemaining())
+                active.write(buffer);
+            // One fsync for the whole batch
+            active.force(false);
+        }
+        catch(IOException ex)
+        {
+            // Part of the batch may have been written, and loading stops at the first torn record of a segment
+            try
+            {
+                openSegment();
+            }
+            catch(IOException suppressed)
+            {
+                ex.addSuppressed(suppressed);
+            }
+            throw ex;
+        }
+        activeBytes += bytes.size();
+        totalBytes += bytes.size();
+        // Only once the batch is durable, so the live settings never run ahead of the segments
+        encoded.forEach(this::apply);
+
+        if(totalBytes > Math.max(2 * liveBytes, segmentSize) && segments.size() > 1)
+            compact();
+        else if(activeBytes >= segmentSize)
+            openSegment();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if(active != null)
+        {
+            active.close();
+            active = null;
+        }
+    }
+
+    private void readSegment(Path segment) throws IOException
+    {
+        long size = Files.size(segment);
+        try(InputStream stream = Files.newInputStream(segment);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream)))
+        {
+            while(true)
+            {
+                long guildId;
+                try
+                {
+                    guildId = in.readLong();
+                }
+                catch(EOFException ex)
+                {
+                    return;
+                }
+                int length = in.readInt();
+                if(length < -1 || length > size)
+                {
+                    LOG.warn("Ignoring the rest of settings segment {} after a corrupt record", segment.getFileName());
+                    return;
+                }
+                byte[] value = length < 0 ? null : new byte[length];
+                if(value != null)
+                    in.readFully(value);
+                int checksum = in.readInt();
+                if(checksum != checksum(guildId, value))
+                {
+                    LOG.warn("Ignoring the rest of settings segment {} after a corrupt record", segment.getFileName());
+                    return;
+                }
+                apply(guildId, value);
+                totalBytes += RECORD_OVERHEAD + (value == null ? 0 : value.length);
+            }
+        }
+        catch(EOFException ex)
+        {
+            // A record torn by a crash, everything before it is still valid
+            LOG.warn("Ignoring a truncated record at the end of settings segment {}", segment.getFileName());
+        }
+    }
+
+    private void apply(long guildId, byte[] value)
+    {
+        byte[] previous = value == null ? live.remove(guildId) : live.put(guildId, value);
+        if(previous != null)
+            liveBytes -= RECORD_OVERHEAD + previous.length;
+        if(value != null)
+        {
+            liveBytes += RECORD_OVERHEAD + value.length;
+            removed.remove(guildId);
+        }
+        else
+            removed.add(guildId);
+    }
+
+    private void compact() throws IOException
+    {
+        // Written to a temporary file first, so a crash during compaction leaves the old segments intact
+        Path segment = segmentPath(nextSegment++);
+        Path temp = segment.resolveSibling(segment.getFileName() + ".tmp");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for(Map.Entry<Long, byte[]> entry : live.entrySet())
+            writeRecord(out, entry.getKey(), entry.getValue());
+        // Without these, an older segment left behind would bring the settings of removed guilds back
+        for(long guildId : removed)
+            writeRecord(out, guildId, null);
+        try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(false);
+        }
+        Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE);
+
+        // The compacted segment is newer than every other and holds tombstones for removed guilds,
+        // so older ones can go even if deleting them fails midway
+        active.close();
+        active = null;
+        List<Path> old = new ArrayList<>(segments);
+        segments.clear();
+        segments.add(segment);
+        totalBytes = bytes.size();
+        openSegment();
+        for(int i = 0; i < old.size(); i++)
+        {
+            try
+            {
+                Files.deleteIfExists(old.get(i));
+            }
+            catch(IOException ex)
+            {
+                // Kept, so the next compaction deletes them and writes the tombstones they need again
+                segments.addAll(0, old.subList(i, old.size()));
+                throw ex;
+            }
+        }
+        // No segment holds the settings they replaced anymore
+        removed.clear();
+    }
+
+    private void openSegment() throws IOException
+    {
+        if(active != null)
+            active.close();
+        Path segment = segmentPath(nextSegment++);
+        active = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        activeBytes = 0;
+        segments.add(segment);
+    }
+
+    private Path segmentPath(long number)
+    {
+        return directory.resolve(String.format("%s%019d%s", PREFIX, number, SUFFIX));
+    }
+
+    private static long segmentNumber(Path segment)
+    {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static void writeRecord(DataOutputStream out, long guildId, byte[] value) throws IOException
+    {
+        out.writeLong(guildId);
+        out.writeInt(value == null ? -1 : value.length);
+        if(value != null)
+            out.write(value);
+        out.writeInt(checksum(guildId, value));
+    }
+
+    private static int checksum(long guildId, byte[] value)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(12).putLong(guildId).putInt(value == null ? -1 : value.length).array());
+        if(value != null)
+            crc.update(value);
+        return (int) crc.getValue();
+    }
+}
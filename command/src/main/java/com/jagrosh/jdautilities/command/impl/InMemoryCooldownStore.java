@@ -0,0 +1,366 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.CooldownKey;
+import com.jagrosh.jdautilities.command.CooldownStore;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe, in-memory {@link CooldownStore CooldownStore}, the default store of a
+ * {@link CommandClientImpl CommandClientImpl}.
+ *
+ * <p>Cooldowns are spread over a fixed number of stripes, each an open-addressed table of primitive
+ * {@code long}s guarded by its own lock, so lookups allocate nothing and threads only contend when their
+ * keys share a stripe. Expiry times are taken from the monotonic {@link System#nanoTime()} clock, meaning
+ * they are unaffected by changes to the wall clock.
+ *
+ * <p>Each stripe also holds a hashed timing wheel with one second ticks. Whenever a stripe is accessed,
+ * the ticks that have passed since it was last accessed are processed and expired cooldowns are evicted,
+ * so the store never needs to be cleaned up by hand. {@link #expire()} can be called to sweep every stripe,
+ * for instance periodically, so stripes that are no longer used are emptied too.
+ */
+public class InMemoryCooldownStore implements CooldownStore
+{
+    private static final int STRIPES = 16;
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int WHEEL_SIZE = 64;
+
+    private final long origin = System.nanoTime() - 1;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public InMemoryCooldownStore()
+    {
+        long tick = now() / TICK_NANOS;
+        for(int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe(tick);
+    }
+
+    @Override
+    public long tryAcquire(CooldownKey key, long nanos)
+    {
+        return tryAcquire(key.getHead(), key.getFirst(), key.getSecond(), nanos);
+    }
+
+    /**
+     * Atomically checks if a key is on cooldown and, if it is not, puts it on cooldown.
+     *
+     * @param  head
+     *         The head of the key
+     * @param  first
+     *         The first ID of the key
+     * @param  second
+     *         The second ID of the key
+     * @param  nanos
+     *         The duration of the cooldown in nanoseconds
+     *
+     * @return {@code 0} if the cooldown was acquired, otherwise the remaining time of the
+     *         existing cooldown in nanoseconds
+     */
+    public long tryAcquire(long head, long first, long second, long nanos)
+    {
+        long hash = CooldownKey.mix(head, first, second);
+        Stripe stripe = stripeOf(hash);
+        stripe.lock.lock();
+        try
+        {
+            long now = now();
+            stripe.advance(now);
+            long expiry = stripe.get(hash, head, first, second);
+            if(expiry > now)
+                return expiry - now;
+            if(nanos > 0)
+                stripe.put(hash, head, first, second, now + nanos);
+            return 0;
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public long getRemaining(CooldownKey key)
+    {
+        long head = key.getHead(), first = key.getFirst(), second = key.getSecond();
+        long hash = CooldownKey.mix(head, first, second);
+        Stripe stripe = stripeOf(hash);
+        stripe.lock.lock();
+        try
+        {
+            long now = now();
+            stripe.advance(now);
+            long expiry = stripe.get(hash, head, first, second);
+            return expiry > now ? expiry - now : 0;
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void apply(CooldownKey key, long nanos)
+    {
+        long head = key.getHead(), first = key.getFirst(), second = key.getSecond();
+        long hash = CooldownKey.mix(head, first, second);
+        Stripe stripe = stripeOf(hash);
+        stripe.lock.lock();
+        try
+        {
+            long now = now();
+            stripe.advance(now);
+            if(nanos > 0)
+                stripe.put(hash, head, first, second, now + nanos);
+            else
+                stripe.remove(hash, head, first, second);
+        }
+        finally
+        {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void expire()
+    {
+        for(Stripe stripe : stripes)
+        {
+            stripe.lock.lock();
+            try
+            {
+                stripe.advance(now());
+            }
+            finally
+            {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cooldowns held, including ones that have expired but have not been evicted yet.
+     *
+     * @return The number of cooldowns
+     */
+    public int size()
+    {
+        int size = 0;
+        for(Stripe stripe : stripes)
+        {
+            stripe.lock.lock();
+            try
+            {
+                size += stripe.size;
+            }
+            finally
+            {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private long now()
+    {
+        // Always positive, so an expiry of 0 can mark an empty slot
+        return System.nanoTime() - origin;
+    }
+
+    private Stripe stripeOf(long hash)
+    {
+        return stripes[(int) (hash >>> 60) & (STRIPES - 1)];
+    }
+
+    private static final class Stripe
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // Open-addressed table with linear probing, each slot taking 3 longs of key and 1 of expiry
+        private long[] keys = new long[16 * 3];
+        private long[] expiries = new long[16];
+        private int size;
+
+        // Timing wheel, each bucket holding the keys expiring in a tick that maps to it
+        private final long[][] wheel = new long[WHEEL_SIZE][];
+        private final int[] wheelSizes = new int[WHEEL_SIZE];
+        private long tick;
+
+        private Stripe(long tick)
+        {
+            this.tick = tick;
+        }
+
+        private long get(long hash, long head, long first, long second)
+        {
+            int slot = find(hash, head, first, second);
+            return slot < 0 ? 0 : expiries[slot];
+        }
+
+        private void put(long hash, long head, long first, long second, long expiry)
+        {
+            int mask = expiries.length - 1;
+            int slot = (int) hash & mask;
+            while(expiries[slot] != 0)
+            {
+                if(matches(slot, head, first, second))
+                {
+                    expiries[slot] = expiry;
+                    schedule(head, first, second, expiry);
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot * 3] = head;
+            keys[slot * 3 + 1] = first;
+            keys[slot * 3 + 2] = second;
+            expiries[slot] = expiry;
+            schedule(head, first, second, expiry);
+            if(++size * 2 > expiries.length)
+                resize();
+        }
+
+        private void remove(long hash, long head, long first, long second)
+        {
+            int slot = find(hash, head, first, second);
+            if(slot >= 0)
+                removeSlot(slot);
+        }
+
+        private int find(long hash, long head, long first, long second)
+        {
+            int mask = expiries.length - 1;
+            int slot = (int) hash & mask;
+            while(expiries[slot] != 0)
+            {
+                if(matches(slot, head, first, second))
+                    return slot;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private boolean matches(int slot, long head, long first, long second)
+        {
+            return keys[slot * 3] == head && keys[slot * 3 + 1] == first && keys[slot * 3 + 2] == second;
+        }
+
+        private void removeSlot(int slot)
+        {
+            // Backward shift deletion, so no tombstones are needed
+            int mask = expiries.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while(expiries[next] != 0)
+            {
+                int home = (int) CooldownKey.mix(keys[next * 3], keys[next * 3 + 1], keys[next * 3 + 2]) & mask;
+                // Move the entry back if the hole lies between its home slot and where it currently is
+                if(((next - home) & mask) >= ((next - hole) & mask))
+                {
+                    System.arraycopy(keys, next * 3, keys, hole * 3, 3);
+                    expiries[hole] = expiries[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            expiries[hole] = 0;
+            size--;
+        }
+
+        private void resize()
+        {
+            long[] oldKeys = keys;
+            long[] oldExpiries = expiries;
+            keys = new long[oldKeys.length * 2];
+            expiries = new long[oldExpiries.length * 2];
+            int mask = expiries.length - 1;
+            for(int i = 0; i < oldExpiries.length; i++)
+            {
+                if(oldExpiries[i] == 0)
+                    continue;
+                int slot = (int) CooldownKey.mix(oldKeys[i * 3], oldKeys[i * 3 + 1], oldKeys[i * 3 + 2]) & mask;
+                while(expiries[slot] != 0)
+                    slot = (slot + 1) & mask;
+                System.arraycopy(oldKeys, i * 3, keys, slot * 3, 3);
+                expiries[slot] = oldExpiries[i];
+            }
+        }
+
+        private void schedule(long head, long first, long second, long expiry)
+        {
+            int bucket = (int) ((expiry / TICK_NANOS) & (WHEEL_SIZE - 1));
+            long[] entries = wheel[bucket];
+            int used = wheelSizes[bucket];
+            if(entries == null)
+                entries = wheel[bucket] = new long[3 * 4];
+            else if(used + 3 > entries.length)
+                entries = wheel[bucket] = Arrays.copyOf(entries, entries.length * 2);
+            entries[used] = head;
+            entries[used + 1] = first;
+            entries[used + 2] = second;
+            wheelSizes[bucket] = used + 3;
+        }
+
+        /**
+         * Processes every tick that has fully passed, evicting the cooldowns that have expired.
+         * Entries scheduled for a later rotation of the wheel are kept, stale entries left behind
+         * by cooldowns that were re-applied are dropped.
+         */
+        private void advance(long now)
+        {
+            long target = now / TICK_NANOS;
+            if(tick >= target)
+                return;
+            // No need to go around more than once, every bucket is processed against the current time
+            long from = Math.max(tick, target - WHEEL_SIZE);
+            for(long t = from; t < target; t++)
+                processBucket((int) (t & (WHEEL_SIZE - 1)), now);
+            tick = target;
+        }
+
+        private void processBucket(int bucket, long now)
+        {
+            long[] entries = wheel[bucket];
+            int used = wheelSizes[bucket];
+            int kept = 0;
+            for(int i = 0; i < used; i += 3)
+            {
+                long head = entries[i], first = entries[i + 1], second = entries[i + 2];
+                int slot = find(CooldownKey.mix(head, first, second), head, first, second);
+                if(slot < 0)
+                    continue;
+                long expiry = expiries[slot];
+                if(expiry <= now)
+                    removeSlot(slot);
+                else if((int) ((expiry / TICK_NANOS) & (WHEEL_SIZE - 1)) == bucket)
+                {
+                    // Expires in a later rotation
+                    entries[kept] = head;
+                    entries[kept + 1] = first;
+                    entries[kept + 2] = second;
+                    kept += 3;
+                }
+            }
+            wheelSizes[bucket] = kept;
+            // Let buckets that grew during a burst shrink back
+            if(entries != null && kept == 0 && entries.length > 3 * 64)
+                wheel[bucket] = null;
+        }
+    }
+}
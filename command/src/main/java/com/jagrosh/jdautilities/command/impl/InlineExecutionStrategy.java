@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.CommandExecutionStrategy;
+import com.jagrosh.jdautilities.command.Interaction;
+
+/**
+ * A {@link com.jagrosh.jdautilities.command.CommandExecutionStrategy CommandExecutionStrategy}
+ * running commands on the calling thread. Nothing is ever queued or rejected.
+ *
+ * @see CommandExecutionStrategy#inline()
+ */
+public final class InlineExecutionStrategy implements CommandExecutionStrategy
+{
+    public static final InlineExecutionStrategy INSTANCE = new InlineExecutionStrategy();
+
+    private InlineExecutionStrategy() {}
+
+    @Override
+    public void execute(Interaction interaction, Runnable task)
+    {
+        task.run();
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getRejectedCount()
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The interactions last upserted by {@link CommandClientImpl CommandClientImpl}, used to skip upserts
+ * that would not change anything.
+ *
+ * <p>Interactions are recorded per scope, either globally or for a single Guild, as a hash of the canonical
+ * JSON of every command's data along with a hash of the whole set. The canonical JSON has its keys sorted, so
+ * the hash of unchanged data is stable across restarts and JVMs.
+ *
+ * <p>If a file is provided, snapshots are loaded from it once and written back to it after every successful
+ * upsert, so a restart with unchanged interactions upserts nothing at all. Otherwise they are only kept in
+ * memory, which still limits upserts to one per scope for every shard of a process.
+ */
+final class InteractionSnapshot
+{
+    private static final Logger LOG = LoggerFactory.getLogger(InteractionSnapshot.class);
+
+    static final String GLOBAL = "global";
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    InteractionSnapshot(Path file)
+    {
+        this.file = file;
+        if(file != null && Files.exists(file))
+            load();
+    }
+
+    /**
+     * Records the provided interactions as upserted to a scope, unless they already are.
+     * <br>This is done before the upsert completes, so every other shard skips it in the meantime.
+     *
+     * @param  scope
+     *         The scope, either {@link #GLOBAL} or the ID of a Guild
+     * @param  entry
+     *         The interactions about to be upserted
+     *
+     * @return The previous interactions of the scope, an empty entry if there were none, or {@code null}
+     *         if the scope is already up to date
+     */
+    synchronized Entry begin(String scope, Entry entry)
+    {
+        Entry previous = entries.get(scope);
+        if(previous != null && previous.hash.equals(entry.hash))
+            return null;
+        entries.put(scope, entry);
+        return previous == null ? Entry.EMPTY : previous;
+    }
+
+    /**
+     * Persists the interactions of a scope after their upsert succeeded.
+     *
+     * @param  scope
+     *         The scope
+     * @param  entry
+     *         The interactions that were upserted
+     */
+    synchronized void complete(String scope, Entry entry)
+    {
+        if(entries.get(scope) == entry)
+            save();
+    }
+
+    /**
+     * Restores the previous interactions of a scope after their upsert failed, so it is no longer skipped
+     * when the client retries it.
+     *
+     * @param  scope
+     *         The scope
+     * @param  entry
+     *         The interactions that failed to upsert
+     * @param  previous
+     *         The previous interactions, as returned by {@link #begin(String, Entry)}
+     */
+    synchronized void fail(String scope, Entry entry, Entry previous)
+    {
+        if(entries.get(scope) != entry)
+            return;
+        if(previous == Entry.EMPTY)
+            entries.remove(scope);
+        else
+            entries.put(scope, previous);
+    }
+
+    private void load()
+    {
+        try
+        {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            for(String scope : json.keySet())
+            {
+                JSONObject entry = json.getJSONObject(scope);
+                JSONObject commands = entry.getJSONObject("commands");
+                Map<String, String> hashes = new HashMap<>();
+                for(String key : commands.keySet())
+                    hashes.put(key, commands.getString(key));
+                entries.put(scope, new Entry(entry.getString("hash"), hashes));
+            }
+        }
+        catch(Exception ex)
+        {
+            // A missing or corrupt snapshot only means the next upsert can't be skipped
+            LOG.warn("Failed to load the interaction snapshot from {}", file, ex);
+            entries.clear();
+        }
+    }
+
+    private void save()
+    {
+        if(file == null)
+            return;
+        JSONObject json = new JSONObject();
+        entries.forEach((scope, entry) -> json.put(scope, new JSONObject()
+            .put("hash", entry.hash)
+            .put("commands", new JSONObject(entry.commands))));
+        try
+        {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, json.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException ex)
+        {
+            LOG.warn("Failed to save the interaction snapshot to {}", file, ex);
+        }
+    }
+
+    /**
+     * Gets the key of a command in a snapshot.
+     * <br>Names are only unique per type, as a slash command and a context menu may share the same name.
+     *
+     * @param  type
+     *         The type of the command
+     * @param  name
+     *         The name of the command
+     *
+     * @return The key
+     */
+    static String keyOf(Command.Type type, String name)
+    {
+        return type.name() + ':' + name;
+    }
+
+    /**
+     * The hashes of a set of interactions.
+     */
+    static final class Entry
+    {
+        static final Entry EMPTY = new Entry("", Collections.emptyMap());
+
+        final String hash;
+        final Map<String, String> commands;
+
+        private Entry(String hash, Map<String, String> commands)
+        {
+            this.hash = hash;
+            this.commands = commands;
+        }
+
+        /**
+         * Hashes the provided command data.
+         *
+         * @param  data
+         *         The data of every interaction
+         *
+         * @return The hashes of the interactions
+         */
+        static Entry of(List<CommandData> data)
+        {
+            // Sorted by key, so the order commands were added in doesn't change the hash of the set
+            Map<String, String> commands = new TreeMap<>();
+            for(CommandData command : data)
+            {
+                StringBuilder canonical = new StringBuilder();
+                appendCanonical(canonical, new JSONObject(command.toData().toString()));
+                commands.put(keyOf(command.getType(), command.getName()), sha256(canonical.toString()));
+            }
+            StringBuilder all = new StringBuilder();
+            commands.forEach((key, hash) -> all.append(key).append('=').append(hash).append('\n'));
+            return new Entry(sha256(all.toString()), new HashMap<>(commands));
+        }
+
+        /**
+         * Gets the data of every command that is new or changed compared to the provided previous interactions.
+         *
+         * @param  previous
+         *         The previous interactions
+         * @param  data
+         *         The data of every interaction, as hashed into this entry
+         *
+         * @return The changed command data
+         */
+        List<CommandData> changedSince(Entry previous, List<CommandData> data)
+        {
+            List<CommandData> changed = new ArrayList<>();
+            for(CommandData command : data)
+            {
+                String key = keyOf(command.getType(), command.getName());
+                if(!commands.get(key).equals(previous.commands.get(key)))
+                    changed.add(command);
+            }
+            return changed;
+        }
+
+        /**
+         * Checks if any command of the provided previous interactions was removed in these.
+         *
+         * @param  previous
+         *         The previous interactions
+         *
+         * @return {@code true} if a command was removed
+         */
+        boolean removedSince(Entry previous)
+        {
+            return !commands.keySet().containsAll(previous.commands.keySet());
+        }
+    }
+
+    private static void appendCanonical(StringBuilder builder, Object value)
+    {
+        if(value instanceof JSONObject)
+        {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<>(object.keySet());
+            Collections.sort(keys);
+            builder.append('{');
+            for(int i = 0; i < keys.size(); i++)
+            {
+                if(i > 0)
+                    builder.append(',');
+                builder.append(JSONObject.quote(keys.get(i))).append(':');
+                appendCanonical(builder, object.get(keys.get(i)));
+            }
+            builder.append('}');
+        }
+        else if(value instanceof JSONArray)
+        {
+            // The order of arrays such as options and choices is meaningful, so it is kept
+            JSONArray array = (JSONArray) value;
+            builder.append('[');
+            for(int i = 0; i < array.length(); i++)
+            {
+                if(i > 0)
+                    builder.append(',');
+                appendCanonical(builder, array.get(i));
+            }
+            builder.append(']');
+        }
+        else
+            builder.append(JSONObject.valueToString(value));
+    }
+
+    private static String sha256(String value)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for(byte b : digest)
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return hex.toString();
+        }
+        catch(NoSuchAlgorithmException ex)
+        {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.CommandExecutionStrategy;
+import com.jagrosh.jdautilities.command.Interaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orders the execution of commands by hashing a key, usually a guild ID, onto a fixed number of serial lanes.
+ *
+ * <p>Tasks in the same lane run one at a time in the order they were submitted, while tasks in different
+ * lanes run in parallel. Each task is still run by its own {@link CommandExecutionStrategy CommandExecutionStrategy};
+ * a lane only holds back the next task until the previous one has finished.
+ */
+final class LaneExecutor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LaneExecutor.class);
+
+    private final Lane[] lanes;
+
+    LaneExecutor(int lanes)
+    {
+        this.lanes = new Lane[lanes];
+        for(int i = 0; i < lanes; i++)
+            this.lanes[i] = new Lane();
+    }
+
+    /**
+     * Queues a task on the lane of the provided key.
+     *
+     * @param  key
+     *         The key, usually the ID of a guild or of a channel in DMs
+     * @param  strategy
+     *         The strategy that runs the task once it is at the head of its lane
+     * @param  interaction
+     *         The interaction being run
+     * @param  task
+     *         The task running it
+     */
+    void submit(long key, CommandExecutionStrategy strategy, Interaction interaction, Runnable task)
+    {
+        Lane lane = lanes[indexOf(key)];
+        lane.queue.add(new Entry(strategy, interaction, task));
+        if(lane.depth.getAndIncrement() == 0)
+            drain(lane);
+    }
+
+    /**
+     * Gets the number of tasks queued or running on the lane of the provided key.
+     *
+     * @param  key
+     *         The key
+     *
+     * @return The depth of the lane
+     */
+    int getDepth(long key)
+    {
+        return lanes[indexOf(key)].depth.get();
+    }
+
+    int[] getDepths()
+    {
+        int[] depths = new int[lanes.length];
+        for(int i = 0; i < depths.length; i++)
+            depths[i] = lanes[i].depth.get();
+        return depths;
+    }
+
+    private int indexOf(long key)
+    {
+        // Snowflakes have low entropy in their lowest bits, so mix them before reducing
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (((hash >>> 32) * lanes.length) >>> 32);
+    }
+
+    private void drain(Lane lane)
+    {
+        // Loop rather than recurse, so tasks finishing on this thread (such as inline ones) don't grow the stack
+        while(true)
+        {
+            Entry entry = lane.queue.poll();
+            try
+            {
+                entry.strategy.execute(entry.interaction, () -> {
+                    entry.started = true;
+                    try
+                    {
+                        entry.task.run();
+                    }
+                    finally
+                    {
+                        // Finished after the submitting thread moved on, so this thread continues the lane
+                        if(entry.arrive() && lane.depth.decrementAndGet() > 0)
+                            drain(lane);
+                    }
+                });
+            }
+            catch(RejectedExecutionException e)
+            {
+                // Never run, so stand in for the task finishing
+                if(!entry.started)
+                    entry.arrive();
+                LOG.warn("Execution of a command was rejected: " + e.getMessage());
+            }
+            catch(Throwable t)
+            {
+                // Don't let one failing command stall everything behind it in the lane, not even
+                // when an inline task throws an Error past its strategy
+                if(!entry.started)
+                    entry.arrive();
+                LOG.error("Execution of a command failed", t);
+            }
+
+            // The task is still running elsewhere, it will continue the lane once finished
+            if(!entry.arrive())
+                return;
+            if(lane.depth.decrementAndGet() == 0)
+                return;
+        }
+    }
+
+    private static final class Lane
+    {
+        private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+    }
+
+    private static final class Entry
+    {
+        private final CommandExecutionStrategy strategy;
+        private final Interaction interaction;
+        private final Runnable task;
+        private final AtomicInteger arrivals = new AtomicInteger();
+        private volatile boolean started;
+
+        private Entry(CommandExecutionStrategy strategy, Interaction interaction, Runnable task)
+        {
+            this.strategy = strategy;
+            this.interaction = interaction;
+            this.task = task;
+        }
+
+        /**
+         * Called once when the task finishes and once when the submitting thread returns,
+         * whichever comes second is responsible for moving the lane on.
+         *
+         * @return {@code true} if this is the second arrival
+         */
+        private boolean arrive()
+        {
+            return arrivals.incrementAndGet() == 2;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import java.util.Arrays;
+
+/**
+ * A bounded index of the messages sent in response to a command call, used by
+ * {@link CommandClientImpl CommandClientImpl} for linked deletion.
+ *
+ * <p>Only IDs are stored: each call message ID maps to a {@code long[]} of alternating channel and message IDs,
+ * one pair per response. Calls are spread over a fixed number of stripes, each holding a ring of calls in the
+ * order they were first linked plus an open-addressed table indexing the ring, guarded by its own lock.
+ * Once a stripe's ring is full, linking a new call evicts the oldest call of that stripe.
+ */
+final class LinkedMessageIndex
+{
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Constructs a new index holding about the provided number of calls.
+     *
+     * @param  capacity
+     *         The number of calls to hold, spread evenly over the stripes
+     */
+    LinkedMessageIndex(int capacity)
+    {
+        int perStripe = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        for(int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe(perStripe);
+    }
+
+    /**
+     * Links a response message to a call.
+     *
+     * @param  callId
+     *         The ID of the call message
+     * @param  channelId
+     *         The ID of the channel the response was sent in
+     * @param  messageId
+     *         The ID of the response message
+     */
+    void link(long callId, long channelId, long messageId)
+    {
+        Stripe stripe = stripeOf(callId);
+        synchronized(stripe)
+        {
+            stripe.link(callId, channelId, messageId);
+        }
+    }
+
+    /**
+     * Removes a call and gets the responses linked to it.
+     *
+     * @param  callId
+     *         The ID of the call message
+     *
+     * @return Alternating channel and message IDs of each response, or {@code null} if nothing is linked to the call
+     */
+    long[] remove(long callId)
+    {
+        Stripe stripe = stripeOf(callId);
+        synchronized(stripe)
+        {
+            return stripe.remove(callId);
+        }
+    }
+
+    private Stripe stripeOf(long id)
+    {
+        return stripes[(int) (mix(id) >>> 60)];
+    }
+
+    private static long mix(long id)
+    {
+        // Snowflakes share their high bits, so spread every bit into the high bits of the hash
+        return id * 0x9E3779B97F4A7C15L;
+    }
+
+    private static final class Stripe
+    {
+        // The ring, in the order calls were first linked
+        private final long[] calls;
+        private final long[][] responses;
+        private int head;
+
+        // Ring slot + 1 of each call, 0 being empty
+        private final int[] table;
+        private final int mask;
+
+        private Stripe(int capacity)
+        {
+            this.calls = new long[capacity];
+            this.responses = new long[capacity][];
+            // Keep the load factor at or under 0.5 so probe sequences stay short
+            int size = Integer.highestOneBit(Math.max(2, capacity) * 4 - 1);
+            this.table = new int[size];
+            this.mask = size - 1;
+        }
+
+        private void link(long callId, long channelId, long messageId)
+        {
+            int index = find(callId);
+            if(index >= 0)
+            {
+                int slot = table[index] - 1;
+                long[] old = responses[slot];
+                long[] linked = Arrays.copyOf(old, old.length + 2);
+                linked[old.length] = channelId;
+                linked[old.length + 1] = messageId;
+                responses[slot] = linked;
+                return;
+            }
+            int slot = head;
+            head = (head + 1) % calls.length;
+            if(responses[slot] != null)
+                unindex(find(calls[slot]));
+            calls[slot] = callId;
+            responses[slot] = new long[] {channelId, messageId};
+            int i = (int) (mix(callId) >>> 32) & mask;
+            while(table[i] != 0)
+                i = (i + 1) & mask;
+            table[i] = slot + 1;
+        }
+
+        private long[] remove(long callId)
+        {
+            int index = find(callId);
+            if(index < 0)
+                return null;
+            int slot = table[index] - 1;
+            long[] linked = responses[slot];
+            unindex(index);
+            // The ring slot stays where it is, and is simply reused once the ring comes around to it
+            responses[slot] = null;
+            return linked;
+        }
+
+        private int find(long callId)
+        {
+            int i = (int) (mix(callId) >>> 32) & mask;
+            int slot;
+            while((slot = table[i]) != 0)
+            {
+                if(calls[slot - 1] == callId && responses[slot - 1] != null)
+                    return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void unindex(int hole)
+        {
+            // Shift the following entries of the probe sequence back, so no tombstones are needed
+            int next = (hole + 1) & mask;
+            while(table[next] != 0)
+            {
+                int home = (int) (mix(calls[table[next] - 1]) >>> 32) & mask;
+                if(((next - home) & mask) >= ((next - hole) & mask))
+                {
+                    table[hole] = table[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            table[hole] = 0;
+        }
+    }
+}
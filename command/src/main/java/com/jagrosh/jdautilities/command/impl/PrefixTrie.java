@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable, case-folded prefix trie used by {@link CommandClientImpl CommandClientImpl}
+ * to find the longest prefix a message starts with.
+ *
+ * <p>Prefixes are folded with {@link Character#toLowerCase(char)} when the trie is compiled, and
+ * message content is folded one character at a time while walking it, so matching never lowercases
+ * or copies the message and stops after at most {@link #getMaxLength() the longest prefix} characters.
+ *
+ * <p>A trie for guild specific prefixes can be laid over the global one with
+ * {@link #longestMatch(CharSequence, PrefixTrie)}, in which case the longest prefix of either is used.
+ */
+final class PrefixTrie
+{
+    static final PrefixTrie EMPTY = new PrefixTrie(new Node());
+
+    private final Node root;
+    private final int maxLength;
+    // Bitmap of the folded first characters of every prefix below 128, the rest are looked up in the root
+    private final long asciiFirstLow, asciiFirstHigh;
+
+    private PrefixTrie(Node root)
+    {
+        this.root = root;
+        this.maxLength = root.depth();
+        long low = 0, high = 0;
+        for(char c : root.keys)
+        {
+            if(c < 64)
+                low |= 1L << c;
+            else if(c < 128)
+                high |= 1L << (c - 64);
+        }
+        this.asciiFirstLow = low;
+        this.asciiFirstHigh = high;
+    }
+
+    /**
+     * Compiles a trie from the provided prefixes, ignoring {@code null} and empty ones.
+     *
+     * @param  prefixes
+     *         The prefixes to compile
+     *
+     * @return The compiled trie, or {@link #EMPTY} if there were no usable prefixes
+     */
+    static PrefixTrie compile(Collection<String> prefixes)
+    {
+        if(prefixes == null || prefixes.isEmpty())
+            return EMPTY;
+        Node root = new Node();
+        boolean any = false;
+        for(String prefix : prefixes)
+        {
+            if(prefix == null || prefix.isEmpty())
+                continue;
+            Node node = root;
+            for(int i = 0; i < prefix.length(); i++)
+                node = node.child(Character.toLowerCase(prefix.charAt(i)));
+            node.terminal = true;
+            any = true;
+        }
+        return any ? new PrefixTrie(root) : EMPTY;
+    }
+
+    /**
+     * Gets the length of the longest prefix in this trie.
+     *
+     * @return The length of the longest prefix, {@code 0} if the trie is empty
+     */
+    int getMaxLength()
+    {
+        return maxLength;
+    }
+
+    boolean isEmpty()
+    {
+        return maxLength == 0;
+    }
+
+    /**
+     * Checks if any prefix in this trie starts with the provided character, ignoring case.
+     * <br>Content starting with any other character can't match, so it can be rejected without walking the trie.
+     *
+     * @param  c
+     *         The first character of the content
+     *
+     * @return {@code true} if a prefix starts with the character
+     */
+    boolean mayStartWith(char c)
+    {
+        char folded = Character.toLowerCase(c);
+        if(folded < 64)
+            return (asciiFirstLow & (1L << folded)) != 0;
+        if(folded < 128)
+            return (asciiFirstHigh & (1L << (folded - 64))) != 0;
+        return root.find(folded) != null;
+    }
+
+    /**
+     * Finds the length of the longest prefix in this trie that the content starts with, ignoring case.
+     *
+     * @param  content
+     *         The content to match
+     *
+     * @return The length of the longest matching prefix, or {@code -1} if none match
+     */
+    int longestMatch(CharSequence content)
+    {
+        return walk(root, content);
+    }
+
+    /**
+     * Finds the length of the longest prefix in this trie or the provided overlay that the content
+     * starts with, ignoring case.
+     *
+     * @param  content
+     *         The content to match
+     * @param  overlay
+     *         A trie of additional prefixes, may be {@code null}
+     *
+     * @return The length of the longest matching prefix, or {@code -1} if none match
+     */
+    int longestMatch(CharSequence content, PrefixTrie overlay)
+    {
+        int match = walk(root, content);
+        if(overlay == null || overlay.maxLength <= match)
+            return match;
+        return Math.max(match, walk(overlay.root, content));
+    }
+
+    private static int walk(Node node, CharSequence content)
+    {
+        int match = -1;
+        int length = content.length();
+        for(int i = 0; i < length; i++)
+        {
+            node = node.find(Character.toLowerCase(content.charAt(i)));
+            if(node == null)
+                break;
+            if(node.terminal)
+                match = i + 1;
+        }
+        return match;
+    }
+
+    private static final class Node
+    {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        private Node find(char c)
+        {
+            // Nodes rarely have more than a handful of children, a linear scan beats hashing here
+            char[] keys = this.keys;
+            for(int i = 0; i < keys.length; i++)
+            {
+                if(keys[i] == c)
+                    return children[i];
+            }
+            return null;
+        }
+
+        private Node child(char c)
+        {
+            Node node = find(c);
+            if(node == null)
+            {
+                node = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = node;
+            }
+            return node;
+        }
+
+        private int depth()
+        {
+            int depth = 0;
+            for(Node child : children)
+                depth = Math.max(depth, child.depth() + 1);
+            return depth;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.CooldownKey;
+import com.jagrosh.jdautilities.command.CooldownStore;
+import net.dv8tion.jda.internal.utils.Checks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link CooldownStore CooldownStore} holding its cooldowns in a {@link CooldownStoreServer CooldownStoreServer},
+ * so several processes running shards of the same bot share them.
+ *
+ * <p>Requests are pipelined over a single connection and matched to their responses by ID, so any number of
+ * threads can wait on the server at once. The connection is opened in the background, and reopened after it
+ * fails, waiting longer between each failed attempt, so no caller ever blocks on connecting.
+ *
+ * <p>If the server cannot be reached, or doesn't answer within the timeout, cooldowns <b>fail open</b>:
+ * the failure is logged and the command is allowed to run, rather than every command being blocked
+ * while the server is down. This applies to the asynchronous methods as well, whose futures never
+ * complete exceptionally because of the server. While there is no connection, cooldowns fail open immediately.
+ * <br>Wrap this store in a {@link CachingCooldownStore CachingCooldownStore} to skip the round trip for
+ * keys already known to be on cooldown.
+ */
+public class RemoteCooldownStore implements CooldownStore
+{
+    private static final Logger LOG = LoggerFactory.getLogger(RemoteCooldownStore.class);
+    private static final long MIN_RECONNECT_DELAY_MILLIS = 250;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final InetSocketAddress address;
+    private final long timeoutMillis;
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final Object connectLock = new Object();
+    private final ScheduledThreadPoolExecutor worker;
+    private final AtomicBoolean connecting = new AtomicBoolean();
+
+    private volatile Connection connection;
+    private volatile boolean shutdown;
+    // When the next connection attempt may be made, and how long the one after a failure waits
+    private volatile long reconnectAt;
+    private long reconnectDelayMillis = MIN_RECONNECT_DELAY_MILLIS;
+
+    public RemoteCooldownStore(String host, int port)
+    {
+        this(new InetSocketAddress(host, port), 2, TimeUnit.SECONDS);
+    }
+
+    public RemoteCooldownStore(InetSocketAddress address, long timeout, TimeUnit unit)
+    {
+        Checks.notNull(address, "Address");
+        Checks.notNull(unit, "TimeUnit");
+        this.address = address;
+        this.timeoutMillis = unit.toMillis(timeout);
+        // Two threads, so timeouts still fire while the other one is blocked connecting
+        AtomicInteger threads = new AtomicInteger();
+        this.worker = new ScheduledThreadPoolExecutor(2, r -> {
+            Thread thread = new Thread(r, "RemoteCooldownStore-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worker.setRemoveOnCancelPolicy(true);
+        this.reconnectAt = System.nanoTime();
+        reconnect();
+    }
+
+    @Override
+    public long tryAcquire(CooldownKey key, long nanos)
+    {
+        return await(send(CooldownProtocol.TRY_ACQUIRE, Collections.singletonList(key), new long[]{nanos})
+            .thenApply(results -> results[0]), 0L);
+    }
+
+    @Override
+    public long getRemaining(CooldownKey key)
+    {
+        return await(send(CooldownProtocol.GET_REMAINING, Collections.singletonList(key), new long[1])
+            .thenApply(results -> results[0]), 0L);
+    }
+
+    @Override
+    public void apply(CooldownKey key, long nanos)
+    {
+        await(send(CooldownProtocol.APPLY, Collections.singletonList(key), new long[]{nanos}), null);
+    }
+
+    @Override
+    public CompletableFuture<Long> tryAcquireAsync(CooldownKey key, long nanos)
+    {
+        return failOpen(send(CooldownProtocol.TRY_ACQUIRE, Collections.singletonList(key), new long[]{nanos})
+            .thenApply(results -> results[0]), 0L);
+    }
+
+    @Override
+    public long[] tryAcquireAll(List<CooldownKey> keys, long[] nanos)
+    {
+        return await(sendAll(keys, nanos), new long[keys.size()]);
+    }
+
+    @Override
+    public CompletableFuture<long[]> tryAcquireAllAsync(List<CooldownKey> keys, long[] nanos)
+    {
+        return failOpen(sendAll(keys, nanos), new long[keys.size()]);
+    }
+
+    @Override
+    public void shutdown()
+    {
+        Connection current;
+        synchronized(connectLock)
+        {
+            shutdown = true;
+            current = connection;
+        }
+        if(current != null)
+            current.close();
+        worker.shutdownNow();
+    }
+
+    private CompletableFuture<long[]> sendAll(List<CooldownKey> keys, long[] nanos)
+    {
+        Checks.check(keys.size() == nanos.length, "Keys and durations must have the same length");
+        Checks.check(keys.size() <= CooldownProtocol.MAX_BATCH, "Cannot acquire more than %d keys at once", CooldownProtocol.MAX_BATCH);
+        return send(CooldownProtocol.TRY_ACQUIRE, keys, nanos);
+    }
+
+    private CompletableFuture<long[]> send(byte op, List<CooldownKey> keys, long[] nanos)
+    {
+        CompletableFuture<long[]> future = new CompletableFuture<>();
+        Connection current = connection;
+        if(current == null)
+        {
+            // Never wait on connecting, the request fails open while the connection is opened in the background
+            reconnect();
+            future.completeExceptionally(new NotConnectedException());
+            return future;
+        }
+        int id = requestIds.incrementAndGet();
+        current.pending.put(id, future);
+        // The connection may have failed and been drained before the future was registered
+        if(connection != current)
+        {
+            if(current.pending.remove(id, future))
+                future.completeExceptionally(new IOException("The connection to the cooldown store was closed"));
+            return future;
+        }
+        try
+        {
+            ScheduledFuture<?> timeout = worker.schedule(() -> {
+                if(current.pending.remove(id, future))
+                    future.completeExceptionally(new TimeoutException("No response within " + timeoutMillis + "ms"));
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            future.whenComplete((results, t) -> timeout.cancel(false));
+        }
+        catch(RejectedExecutionException e)
+        {
+            // Shut down while sending
+            if(current.pending.remove(id, future))
+                future.completeExceptionally(new IOException("The cooldown store has been shut down"));
+            return future;
+        }
+        try
+        {
+            synchronized(current.out)
+            {
+                current.out.writeInt(id);
+                current.out.writeByte(op);
+                current.out.writeInt(keys.size());
+                for(int i = 0; i < keys.size(); i++)
+                {
+                    CooldownKey key = keys.get(i);
+                    current.out.writeLong(key.getHead());
+                    current.out.writeLong(key.getFirst());
+                    current.out.writeLong(key.getSecond());
+                    current.out.writeLong(nanos[i]);
+                }
+                current.out.flush();
+            }
+        }
+        catch(IOException e)
+        {
+            disconnect(current, e);
+        }
+        return future;
+    }
+
+    private void reconnect()
+    {
+        if(shutdown || connection != null || System.nanoTime() - reconnectAt < 0 || !connecting.compareAndSet(false, true))
+            return;
+        try
+        {
+            worker.execute(this::connect);
+        }
+        catch(RejectedExecutionException e)
+        {
+            connecting.set(false);
+        }
+    }
+
+    private void connect()
+    {
+        try
+        {
+            Socket socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address, (int) timeoutMillis);
+            Connection opened = new Connection(socket);
+            synchronized(connectLock)
+            {
+                if(shutdown)
+                {
+                    opened.close();
+                    return;
+                }
+                connection = opened;
+            }
+            reconnectDelayMillis = MIN_RECONNECT_DELAY_MILLIS;
+            Thread reader = new Thread(() -> read(opened), "RemoteCooldownStore-Reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+        catch(IOException e)
+        {
+            LOG.warn("Could not connect to the cooldown store at {}, retrying in {}ms: {}", address, reconnectDelayMillis, e.toString());
+            reconnectAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reconnectDelayMillis);
+            try
+            {
+                // Retry without waiting for a request, so the first ones once the server is back aren't lost
+                worker.schedule(this::reconnect, reconnectDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            catch(RejectedExecutionException ignored) {}
+            reconnectDelayMillis = Math.min(reconnectDelayMillis * 2, MAX_RECONNECT_DELAY_MILLIS);
+        }
+        finally
+        {
+            connecting.set(false);
+        }
+    }
+
+    private void read(Connection current)
+    {
+        try
+        {
+            while(true)
+            {
+                int id = current.in.readInt();
+                int count = current.in.readInt();
+                long[] results = new long[Math.max(0, count)];
+                for(int i = 0; i < results.length; i++)
+                    results[i] = current.in.readLong();
+                CompletableFuture<long[]> future = current.pending.remove(id);
+                if(future == null)
+                    continue;
+                if(count < 0)
+                    future.completeExceptionally(new IOException("The cooldown store server failed to handle the request"));
+                else
+                    future.complete(results);
+            }
+        }
+        catch(IOException e)
+        {
+            disconnect(current, e);
+        }
+    }
+
+    private void disconnect(Connection failed, IOException cause)
+    {
+        synchronized(connectLock)
+        {
+            if(connection == failed)
+                connection = null;
+        }
+        failed.close();
+        reconnect();
+        // Any request still pending on the dead connection will never be answered
+        for(Integer id : failed.pending.keySet())
+        {
+            CompletableFuture<long[]> future = failed.pending.remove(id);
+            if(future != null)
+                future.completeExceptionally(cause);
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future, T fallback)
+    {
+        try
+        {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return fallback;
+        }
+        catch(ExecutionException e)
+        {
+            warn(e.getCause());
+            return fallback;
+        }
+        catch(TimeoutException e)
+        {
+            future.cancel(false);
+            warn(e);
+            return fallback;
+        }
+    }
+
+    private <T> CompletableFuture<T> failOpen(CompletableFuture<T> future, T fallback)
+    {
+        return future.handle((result, t) -> {
+            if(t == null)
+                return result;
+            warn(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+            return fallback;
+        });
+    }
+
+    private void warn(Throwable cause)
+    {
+        // Connection failures are logged once per attempt rather than once per request
+        if(cause instanceof NotConnectedException)
+            return;
+        LOG.warn("Could not reach the cooldown store at {}, allowing the command: {}", address, cause.toString());
+    }
+
+    private static final class NotConnectedException extends IOException
+    {
+        private NotConnectedException()
+        {
+            super("Not connected to the cooldown store");
+        }
+    }
+
+    private static final class Connection
+    {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Map<Integer, CompletableFuture<long[]>> pending = new ConcurrentHashMap<>();
+
+        private Connection(Socket socket) throws IOException
+        {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private void close()
+        {
+            try
+            {
+                socket.close();
+            }
+            catch(IOException ignored) {}
+        }
+    }
+}
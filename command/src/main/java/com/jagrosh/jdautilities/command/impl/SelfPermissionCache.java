@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.attribute.IPermissionContainer;
+import net.dv8tion.jda.internal.utils.PermissionUtil;
+
+/**
+ * A cache of the raw effective permissions of the bot, keyed by the ID of the permission container
+ * they were computed for, used by {@link CommandClientImpl CommandClientImpl}.
+ *
+ * <p>Server level permissions are kept under the ID of the Guild, which never collides with the ID of a channel.
+ * Entries are spread over a fixed number of stripes, each an open-addressed table of primitive {@code long}s,
+ * and are never expired by time. Instead the client invalidates them from the events that can change them,
+ * either for a single container or for every entry of a Guild.
+ *
+ * <p>Each stripe has a version that is incremented by every invalidation. Permissions are computed outside
+ * of the stripe's lock and are only stored if the version didn't change in the meantime, so a computation
+ * racing with an invalidation can never leave a stale entry behind.
+ */
+final class SelfPermissionCache
+{
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    SelfPermissionCache()
+    {
+        for(int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe();
+    }
+
+    /**
+     * Gets the effective permissions of the bot in the provided container, computing and caching them if needed.
+     *
+     * @param  container
+     *         The permission container
+     *
+     * @return The raw effective permissions
+     */
+    long get(IPermissionContainer container)
+    {
+        long id = container.getIdLong();
+        Stripe stripe = stripeOf(id);
+        long version;
+        synchronized(stripe)
+        {
+            int slot = stripe.find(id);
+            if(slot >= 0)
+                return stripe.values[slot];
+            version = stripe.version;
+        }
+        Member self = container.getGuild().getSelfMember();
+        long permissions = PermissionUtil.getEffectivePermission(container, self);
+        store(stripe, version, id, container.getGuild().getIdLong(), permissions, self);
+        return permissions;
+    }
+
+    /**
+     * Gets the server level effective permissions of the bot in the provided Guild, computing and caching them
+     * if needed.
+     * <br>If the bot is an administrator, every bit is set.
+     *
+     * @param  guild
+     *         The Guild
+     *
+     * @return The raw effective permissions
+     */
+    long get(Guild guild)
+    {
+        long id = guild.getIdLong();
+        Stripe stripe = stripeOf(id);
+        long version;
+        synchronized(stripe)
+        {
+            int slot = stripe.find(id);
+            if(slot >= 0)
+                return stripe.values[slot];
+            version = stripe.version;
+        }
+        Member self = guild.getSelfMember();
+        long permissions = PermissionUtil.getEffectivePermission(self);
+        if((permissions & Permission.ADMINISTRATOR.getRawValue()) != 0)
+            permissions = ~0L;
+        store(stripe, version, id, id, permissions, self);
+        return permissions;
+    }
+
+    /**
+     * Removes the cached permissions of a single permission container.
+     *
+     * @param  containerId
+     *         The ID of the container
+     */
+    void invalidate(long containerId)
+    {
+        Stripe stripe = stripeOf(containerId);
+        synchronized(stripe)
+        {
+            stripe.version++;
+            stripe.remove(containerId);
+        }
+    }
+
+    /**
+     * Removes the cached permissions of a Guild, and of every permission container in it.
+     *
+     * @param  guildId
+     *         The ID of the Guild
+     */
+    void invalidateGuild(long guildId)
+    {
+        for(Stripe stripe : stripes)
+        {
+            synchronized(stripe)
+            {
+                stripe.version++;
+                stripe.removeGuild(guildId);
+            }
+        }
+    }
+
+    private static void store(Stripe stripe, long version, long id, long guildId, long permissions, Member self)
+    {
+        // Timeouts end without an event, so the permissions of a timed out bot are never cached
+        if(self.isTimedOut())
+            return;
+        synchronized(stripe)
+        {
+            if(stripe.version == version && stripe.find(id) < 0)
+                stripe.put(id, guildId, permissions);
+        }
+    }
+
+    private Stripe stripeOf(long id)
+    {
+        return stripes[(int) (mix(id) >>> 60)];
+    }
+
+    private static int slotOf(long id, int mask)
+    {
+        return (int) (mix(id) >>> 32) & mask;
+    }
+
+    private static long mix(long id)
+    {
+        // Snowflakes share their high bits, so spread every bit into the high bits of the hash
+        return id * 0x9E3779B97F4A7C15L;
+    }
+
+    private static final class Stripe
+    {
+        private long[] keys = new long[16];
+        private long[] guilds = new long[16];
+        private long[] values = new long[16];
+        private int size;
+        private long version;
+
+        private int find(long id)
+        {
+            int mask = keys.length - 1;
+            int slot = slotOf(id, mask);
+            long key;
+            while((key = keys[slot]) != 0)
+            {
+                if(key == id)
+                    return slot;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void put(long id, long guildId, long value)
+        {
+            // Keep the load factor at or under 0.5 so probe sequences stay short
+            if((size + 1) * 2 > keys.length)
+                resize(keys.length * 2);
+            int mask = keys.length - 1;
+            int slot = slotOf(id, mask);
+            while(keys[slot] != 0)
+                slot = (slot + 1) & mask;
+            keys[slot] = id;
+            guilds[slot] = guildId;
+            values[slot] = value;
+            size++;
+        }
+
+        private void remove(long id)
+        {
+            int slot = find(id);
+            if(slot < 0)
+                return;
+            // Shift the following entries of the probe sequence back, so no tombstones are needed
+            int mask = keys.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while(keys[next] != 0)
+            {
+                int home = slotOf(keys[next], mask);
+                if(((next - home) & mask) >= ((next - hole) & mask))
+                {
+                    keys[hole] = keys[next];
+                    guilds[hole] = guilds[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[hole] = 0;
+            size--;
+        }
+
+        private void removeGuild(long guildId)
+        {
+            int remaining = 0;
+            for(int i = 0; i < keys.length; i++)
+            {
+                if(keys[i] != 0 && guilds[i] != guildId)
+                    remaining++;
+            }
+            if(remaining == size)
+                return;
+            long[] oldKeys = keys, oldGuilds = guilds, oldValues = values;
+            keys = new long[keys.length];
+            guilds = new long[keys.length];
+            values = new long[keys.length];
+            size = 0;
+            for(int i = 0; i < oldKeys.length; i++)
+            {
+                if(oldKeys[i] != 0 && oldGuilds[i] != guildId)
+                    put(oldKeys[i], oldGuilds[i], oldValues[i]);
+            }
+        }
+
+        private void resize(int capacity)
+        {
+            long[] oldKeys = keys, oldGuilds = guilds, oldValues = values;
+            keys = new long[capacity];
+            guilds = new long[capacity];
+            values = new long[capacity];
+            size = 0;
+            for(int i = 0; i < oldKeys.length; i++)
+            {
+                if(oldKeys[i] != 0)
+                    put(oldKeys[i], oldGuilds[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.StatsDestination;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.sharding.ShardManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reports the guild count of the bot to every {@link StatsDestination StatsDestination}, used by
+ * {@link CommandClientImpl CommandClientImpl}.
+ *
+ * <p>Updates are coalesced over a fixed window: the first update after a report schedules the next one,
+ * and every update until then only replaces the JDA instance to report from. When the bot is sharded, the
+ * guild counts of every shard of its {@link ShardManager ShardManager} are added together into a single
+ * report, instead of each shard reporting its own count.
+ */
+final class StatsReporter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(StatsReporter.class);
+
+    private final ScheduledExecutorService executor;
+    private final StatsDestination[] destinations;
+    private final long windowMillis;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile JDA jda;
+    private volatile int totalGuilds;
+
+    StatsReporter(ScheduledExecutorService executor, List<StatsDestination> destinations, long windowMillis)
+    {
+        this.executor = executor;
+        this.destinations = destinations.toArray(new StatsDestination[0]);
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Records that the guild count of the provided shard may have changed, scheduling a report if
+     * none is scheduled yet.
+     *
+     * @param  jda
+     *         The shard the change happened on
+     */
+    void update(JDA jda)
+    {
+        this.jda = jda;
+        if(!scheduled.compareAndSet(false, true))
+            return;
+        try
+        {
+            executor.schedule(this::report, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        catch(RejectedExecutionException ex)
+        {
+            // The client is shutting down
+            scheduled.set(false);
+        }
+    }
+
+    /**
+     * Gets the guild count of the last report.
+     *
+     * @return The total guild count across all shards
+     */
+    int getTotalGuilds()
+    {
+        return totalGuilds;
+    }
+
+    private void report()
+    {
+        // Cleared before counting, so an update racing with this report schedules another one
+        scheduled.set(false);
+        JDA jda = this.jda;
+        ShardManager shardManager = jda.getShardManager();
+        long guilds = 0;
+        int shards;
+        if(shardManager != null)
+        {
+            // Summing the size of each shard's cache is constant time per shard, where the unified
+            // guild cache of the ShardManager would stream every guild to remove duplicates
+            for(JDA shard : shardManager.getShardCache())
+                guilds += shard.getGuildCache().size();
+            shards = shardManager.getShardsTotal();
+        }
+        else
+        {
+            guilds = jda.getGuildCache().size();
+            shards = jda.getShardInfo().getShardTotal();
+        }
+        int guildCount = (int) Math.min(guilds, Integer.MAX_VALUE);
+        totalGuilds = guildCount;
+        for(StatsDestination destination : destinations)
+        {
+            try
+            {
+                destination.send(jda, guildCount, shards);
+            }
+            catch(Exception ex)
+            {
+                LOG.error("Failed to report stats to {}", destination, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.command.impl;
+
+import com.jagrosh.jdautilities.command.GuildSettingsStore;
+import com.jagrosh.jdautilities.command.MutableGuildSettingsManager;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.internal.utils.Checks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link MutableGuildSettingsManager MutableGuildSettingsManager} keeping every Guild's settings in memory,
+ * and writing changes to a {@link GuildSettingsStore GuildSettingsStore} in the background.
+ *
+ * <p>Settings are loaded from the store on first use. Changed Guilds are only marked dirty, and every
+ * dirty Guild is written in a single batch at a fixed interval, so a burst of changes costs a single write
+ * no matter how many times each Guild changed. Remaining changes are written on {@link #shutdown()}.
+ *
+ * <p>A batch that fails to write is retried with the next one, so changes are never dropped, but may be
+ * lost if the process dies before the store recovers.
+ *
+ * <p>Batches are written from a background thread, reading the settings objects held at that time. Settings
+ * objects should therefore be immutable, and changed by replacing them with {@link #setSettings(Guild, Object)}.
+ *
+ * @param  <T>
+ *         The specific type of the settings object.
+ */
+public class WriteBehindGuildSettingsManager<T> implements MutableGuildSettingsManager<T>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindGuildSettingsManager.class);
+
+    private final GuildSettingsStore<T> store;
+    private final Map<Long, T> settings = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher;
+    private final Object flushLock = new Object();
+    // Changes hold the read lock from checking the manager is open until marking the guild dirty,
+    // so none can be marked once shutdown() took the write lock and is about to write the last batch
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean loaded = false;
+    private volatile boolean closed = false;
+
+    public WriteBehindGuildSettingsManager(GuildSettingsStore<T> store, long flushInterval, TimeUnit unit)
+    {
+        Checks.notNull(store, "GuildSettingsStore");
+        Checks.positive(flushInterval, "Flush interval");
+        Checks.notNull(unit, "TimeUnit");
+        this.store = store;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "settings-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, unit);
+    }
+
+    @Override
+    public T getSettings(Guild guild)
+    {
+        ensureLoaded();
+        return settings.get(guild.getIdLong());
+    }
+
+    @Override
+    public void setSettings(Guild guild, T settings)
+    {
+        ensureLoaded();
+        closeLock.readLock().lock();
+        try
+        {
+            checkOpen();
+            long guildId = guild.getIdLong();
+            if(settings == null)
+                this.settings.remove(guildId);
+            else
+                this.settings.put(guildId, settings);
+            dirty.add(guildId);
+        }
+        finally
+        {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The settings object is written from a background thread, which may read it while it is being modified,
+     * so it must be safe to read concurrently. Otherwise replace it with {@link #setSettings(Guild, Object)}.
+     */
+    @Override
+    public void markDirty(Guild guild)
+    {
+        closeLock.readLock().lock();
+        try
+        {
+            checkOpen();
+            dirty.add(guild.getIdLong());
+        }
+        finally
+        {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void init()
+    {
+        ensureLoaded();
+    }
+
+    @Override
+    public void flush()
+    {
+        if(dirty.isEmpty())
+            return;
+        synchronized(flushLock)
+        {
+            Map<Long, T> batch = new HashMap<>();
+            for(Iterator<Long> it = dirty.iterator(); it.hasNext();)
+            {
+                // Cleared before the value is read, so a change racing with this batch is written by the next one
+                Long guildId = it.next();
+                it.remove();
+                batch.put(guildId, settings.get(guildId));
+            }
+            if(batch.isEmpty())
+                return;
+            try
+            {
+                store.write(batch);
+            }
+            catch(Exception ex)
+            {
+                LOG.error("Failed to write the settings of {} guilds, retrying with the next batch", batch.size(), ex);
+                dirty.addAll(batch.keySet());
+            }
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        // Every shard shutting down calls this, only the first one closes the store
+        closeLock.writeLock().lock();
+        try
+        {
+            if(closed)
+                return;
+            closed = true;
+        }
+        finally
+        {
+            closeLock.writeLock().unlock();
+        }
+        flusher.shutdown();
+        flush();
+        try
+        {
+            store.close();
+        }
+        catch(IOException ex)
+        {
+            LOG.error("Failed to close the guild settings store", ex);
+        }
+    }
+
+    private void ensureLoaded()
+    {
+        if(loaded)
+            return;
+        synchronized(settings)
+        {
+            if(loaded)
+                return;
+            try
+            {
+                settings.putAll(store.load());
+            }
+            catch(IOException ex)
+            {
+                // Writing over settings that failed to load would lose them
+                throw new IllegalStateException("Failed to load guild settings", ex);
+            }
+            loaded = true;
+        }
+    }
+
+    private void checkOpen()
+    {
+        if(closed)
+            throw new IllegalStateException("This WriteBehindGuildSettingsManager has been shut down");
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2016-2018 John Grosh (jagrosh) & Kaidan Gustave (TheMonitorLizard)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jdautilities.commons.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits long text into chunks that each fit within a character limit, such as the 2000 characters
+ * of a {@link net.dv8tion.jda.api.entities.Message Message} or the 4096 characters of an embed description.
+ *
+ * <p>Text is split in a single pass, preferring to split at a line break, then at a space, and only splitting
+ * in the middle of a word if neither is found in the second half of a chunk. Whitespace around each split is
+ * dropped. The resulting {@link Chunks Chunks} only hold the boundaries of each chunk in the original text,
+ * so nothing is copied until a chunk is {@linkplain Chunks#get(int) turned into a String}.
+ *
+ * <p>Code blocks are kept intact across chunks: if a chunk ends inside of a {@code ```} code block, the block is
+ * closed at the end of that chunk and reopened, with the same language, at the start of the next one.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public class MessageSplitter
+{
+    /**
+     * The maximum length of the content of a {@link net.dv8tion.jda.api.entities.Message Message}.
+     */
+    public static final int MESSAGE_LIMIT = 2000;
+
+    /**
+     * The maximum length of the description of a {@link net.dv8tion.jda.api.entities.MessageEmbed MessageEmbed}.
+     */
+    public static final int EMBED_DESCRIPTION_LIMIT = 4096;
+
+    private static final String FENCE = "```";
+    private static final String CLOSING_FENCE = "\n```";
+    // Longer "languages" are almost certainly just text following a fence, so they aren't carried over
+    private static final int MAX_LANGUAGE_LENGTH = 32;
+
+    private final int limit;
+
+    /**
+     * Constructs a new MessageSplitter with the provided limit.
+     *
+     * @param  limit
+     *         The maximum length of each chunk, including any code block fences added to it
+     *
+     * @throws IllegalArgumentException
+     *         If the limit is too small to fit a reopened code block and some text
+     */
+    public MessageSplitter(int limit)
+    {
+        if(limit < 2 * (FENCE.length() + MAX_LANGUAGE_LENGTH + CLOSING_FENCE.length() + 1))
+            throw new IllegalArgumentException("Limit must be at least " + 2 * (FENCE.length() + MAX_LANGUAGE_LENGTH + CLOSING_FENCE.length() + 1) + "!");
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the maximum length of each chunk.
+     *
+     * @return The limit of this splitter
+     */
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * Splits the provided text into chunks.
+     *
+     * @param  content
+     *         The text to split
+     *
+     * @return The chunks, empty if the text is empty or only whitespace
+     */
+    public Chunks split(CharSequence content)
+    {
+        Chunks chunks = new Chunks(content);
+        int length = content.length();
+        // Only reserve room for a closing fence if there is any code block at all
+        int reserved = indexOf(content, FENCE, 0) >= 0 ? CLOSING_FENCE.length() : 0;
+        int end = trimEnd(content, 0, length);
+        int pos = skipLeading(content, 0, end, false);
+        boolean inBlock = false;
+        String reopen = null;
+        while(pos < end)
+        {
+            int prefix = reopen == null ? 0 : reopen.length();
+            if(prefix + end - pos <= limit)
+            {
+                chunks.add(pos, end, reopen, false);
+                break;
+            }
+            int window = pos + limit - prefix - reserved;
+            int cut = findCut(content, pos + (window - pos) / 2, window, end);
+
+            // Track code blocks opened and closed within this chunk
+            String language = reopen == null ? null : reopen.substring(FENCE.length(), reopen.length() - 1);
+            for(int i = pos; i + FENCE.length() <= cut; i++)
+            {
+                if(!startsWith(content, FENCE, i))
+                    continue;
+                inBlock = !inBlock;
+                language = inBlock ? readLanguage(content, i + FENCE.length(), length) : null;
+                i += FENCE.length() - 1;
+            }
+
+            int chunkEnd = trimEnd(content, pos, cut);
+            if(chunkEnd > pos)
+                chunks.add(pos, chunkEnd, reopen, inBlock);
+            reopen = inBlock ? FENCE + language + "\n" : null;
+            pos = skipLeading(content, cut, end, inBlock);
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits the provided text into chunks, and turns each of them into a String.
+     *
+     * @param  content
+     *         The text to split
+     *
+     * @return The chunks as Strings
+     */
+    public List<String> splitToStrings(CharSequence content)
+    {
+        return split(content).toList();
+    }
+
+    private static int findCut(CharSequence content, int min, int window, int end)
+    {
+        // A split point at the window itself still fits, as it is dropped along with other whitespace
+        int from = Math.min(window, end - 1);
+        for(int i = from; i >= min; i--)
+        {
+            if(content.charAt(i) == '\n')
+                return i;
+        }
+        for(int i = from; i >= min; i--)
+        {
+            if(Character.isWhitespace(content.charAt(i)))
+                return i;
+        }
+        // Don't split a surrogate pair
+        return Character.isHighSurrogate(content.charAt(window - 1)) ? window - 1 : window;
+    }
+
+    private static String readLanguage(CharSequence content, int start, int length)
+    {
+        for(int i = start; i < length && i - start <= MAX_LANGUAGE_LENGTH; i++)
+        {
+            char c = content.charAt(i);
+            if(c == '\n')
+                return content.subSequence(start, i).toString();
+            if(Character.isWhitespace(c) || c == '`')
+                break;
+        }
+        return "";
+    }
+
+    private static int skipLeading(CharSequence content, int pos, int end, boolean inBlock)
+    {
+        // Indentation inside of a code block is kept, only the line break the chunk was split at is dropped
+        while(pos < end && (inBlock ? content.charAt(pos) == '\n' || content.charAt(pos) == '\r' : content.charAt(pos) <= ' '))
+            pos++;
+        return pos;
+    }
+
+    private static int trimEnd(CharSequence content, int start, int end)
+    {
+        while(end > start && content.charAt(end - 1) <= ' ')
+            end--;
+        return end;
+    }
+
+    private static boolean startsWith(CharSequence content, String prefix, int offset)
+    {
+        for(int i = 0; i < prefix.length(); i++)
+        {
+            if(content.charAt(offset + i) != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence content, String target, int from)
+    {
+        for(int i = from; i + target.length() <= content.length(); i++)
+        {
+            if(startsWith(content, target, i))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * The chunks a text was split into by a {@link MessageSplitter MessageSplitter}.
+     *
+     * <p>Each chunk is a region of the original text, plus a code block fence to reopen at its start and
+     * one to close at its end when the chunk was split inside of a code block.
+     */
+    public static final class Chunks
+    {
+        private final CharSequence content;
+        private int[] bounds = new int[8];
+        private String[] prefixes = new String[4];
+        private boolean[] closed = new boolean[4];
+        private int size;
+
+        private Chunks(CharSequence content)
+        {
+            this.content = content;
+        }
+
+        private void add(int start, int end, String prefix, boolean close)
+        {
+            if(size == prefixes.length)
+            {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                prefixes = Arrays.copyOf(prefixes, prefixes.length * 2);
+                closed = Arrays.copyOf(closed, closed.length * 2);
+            }
+            bounds[2 * size] = start;
+            bounds[2 * size + 1] = end;
+            prefixes[size] = prefix;
+            closed[size] = close;
+            size++;
+        }
+
+        /**
+         * Gets the number of chunks.
+         *
+         * @return The number of chunks
+         */
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * Gets the index in the original text a chunk starts at, inclusive.
+         *
+         * @param  index
+         *         The index of the chunk
+         *
+         * @return The start of the chunk
+         */
+        public int getStart(int index)
+        {
+            checkIndex(index);
+            return bounds[2 * index];
+        }
+
+        /**
+         * Gets the index in the original text a chunk ends at, exclusive.
+         *
+         * @param  index
+         *         The index of the chunk
+         *
+         * @return The end of the chunk
+         */
+        public int getEnd(int index)
+        {
+            checkIndex(index);
+            return bounds[2 * index + 1];
+        }
+
+        /**
+         * Gets the text to put before a chunk, reopening a code block the previous chunk ended inside of.
+         *
+         * @param  index
+         *         The index of the chunk
+         *
+         * @return The text to put before the chunk, or an empty String if there is none
+         */
+        public String getPrefix(int index)
+        {
+            checkIndex(index);
+            return prefixes[index] == null ? "" : prefixes[index];
+        }
+
+        /**
+         * Gets the text to put after a chunk, closing a code block the chunk ends inside of.
+         *
+         * @param  index
+         *         The index of the chunk
+         *
+         * @return The text to put after the chunk, or an empty String if there is none
+         */
+        public String getSuffix(int index)
+        {
+            checkIndex(index);
+            return closed[index] ? CLOSING_FENCE : "";
+        }
+
+        /**
+         * Turns a chunk into a String, including its {@linkplain #getPrefix(int) prefix} and
+         * {@linkplain #getSuffix(int) suffix}.
+         *
+         * @param  index
+         *         The index of the chunk
+         *
+         * @return The chunk as a String
+         */
+        public String get(int index)
+        {
+            String prefix = getPrefix(index), suffix = getSuffix(index);
+            int start = bounds[2 * index], end = bounds[2 * index + 1];
+            if(prefix.isEmpty() && suffix.isEmpty())
+                return content.subSequence(start, end).toString();
+            return new StringBuilder(prefix.length() + end - start + suffix.length())
+                .append(prefix).append(content, start, end).append(suffix).toString();
+        }
+
+        /**
+         * Turns every chunk into a String.
+         *
+         * @return The chunks as Strings
+         */
+        public List<String> toList()
+        {
+            List<String> list = new ArrayList<>(size);
+            for(int i = 0; i < size; i++)
+                list.add(get(i));
+            return list;
+        }
+
+        private void checkIndex(int index)
+        {
+            if(index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}